@@ -0,0 +1,25 @@
+package diskExceptions;
+/**
+ * Exception for a file that does not exist in the current directory
+ * @author Francisco Diaz
+ *
+ */
+public class NonExistingFileException extends RuntimeException {
+	/**
+	 * Exception for the verification of the existence of a file.
+	 * Is thrown when no file has the given name.
+	 */
+	public NonExistingFileException() {}
+	
+	public NonExistingFileException(String arg0) {
+		super(arg0);
+	}
+
+	public NonExistingFileException(Throwable arg0) {
+		super(arg0);
+	}
+
+	public NonExistingFileException(String arg0, Throwable arg1) {
+		super(arg0, arg1);
+	}
+}
@@ -0,0 +1,314 @@
+package diskUtilities;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import diskExceptions.FullDiskException;
+
+/**
+ * Directory whose entries are kept sorted by name in a B+-tree. The root block of
+ * the directory holds the number of the top node of the tree (first 4 bytes, 0
+ * while the directory is empty) and the number of levels of internal nodes above
+ * the leaves (next 4 bytes).
+ * A leaf is a directory block with its entries sorted and together at the start of
+ * the block, and its last 4 bytes link it to the next leaf, so the leaves read in
+ * order are a chain of directory blocks listed in name order. An internal node holds
+ * its number of keys (first 4 bytes) and its first child (next 4 bytes), followed by
+ * pairs of a key (20 bytes, the first name of the child that follows) and a child.
+ * Lookups, inserts and removals read one node per level of the tree. Removed
+ * entries are not merged with the ones of other leaves: a leaf left empty stays in
+ * the tree and takes later entries of its range of names.
+ * @author Francisco Diaz
+ *
+ */
+public class BTreeDirectory implements Directory {
+
+	public void create(DiskUnit d, int root) {
+		d.write(root, new VirtualDiskBlock(d.getBlockSize()));   // no top node and no levels
+	}
+
+	public ArrayList<Integer> find(DiskUnit d, int root, String name) {
+		int leaf = findLeaf(d, root, name, null);
+		if (leaf == 0)
+			return null;
+		Integer bytePos = FileLoaderAndManager.findFileInDirBlock(DiskUtils.copyBlockToVDB(d, leaf), name);
+		if (bytePos == null)
+			return null;
+		ArrayList<Integer> foundFileInfo = new ArrayList<>();
+		foundFileInfo.add(leaf);      // BlockNum of where the file resides.
+		foundFileInfo.add(bytePos);   // Byte position in the block.
+		return foundFileInfo;
+	}
+
+	/**
+	 * Inserts the entry in its leaf. A leaf that overflows is split in two and the
+	 * first name of the new leaf is inserted in the parent, which may split in turn;
+	 * when the top node splits, a new top node is added above it. The blocks that
+	 * the splits need are taken before anything is written, so a full disk leaves
+	 * the directory as it was.
+	 */
+	public void add(DiskUnit d, int root, String name, int iNodeIndex) throws FullDiskException {
+		VirtualDiskBlock rootBlock = DiskUtils.copyBlockToVDB(d, root);
+		if (DiskUtils.getIntFromBlock(rootBlock, 0) == 0) {   // first entry of the directory
+			int firstLeaf = BlockManager.getFreeBlockNumber(d);
+			d.write(firstLeaf, new VirtualDiskBlock(d.getBlockSize()));
+			DiskUtils.copyIntToBlock(rootBlock, 0, firstLeaf);
+			d.write(root, rootBlock);
+		}
+
+		ArrayList<Integer> path = new ArrayList<>();   // internal nodes from the top down to the leaf
+		int leaf = findLeaf(d, root, name, path);
+		VirtualDiskBlock vdb = DiskUtils.copyBlockToVDB(d, leaf);
+		ArrayList<String> names = new ArrayList<>();
+		ArrayList<Integer> iNodes = new ArrayList<>();
+		readLeaf(vdb, names, iNodes);
+		int nextLeaf = DiskUtils.getIntFromBlock(vdb, d.getBlockSize()-4);
+
+		int pos = 0;
+		while (pos < names.size() && names.get(pos).compareTo(name) < 0)
+			pos++;
+		names.add(pos, name);
+		iNodes.add(pos, iNodeIndex);
+		if (names.size() <= getLeafCapacity(d)) {
+			writeLeaf(d, leaf, names, iNodes, nextLeaf);
+			return;
+		}
+
+		// Blocks needed: the new leaf, a new node for every full node above it and
+		// a new top node if all of them are full
+		int needed = 1;
+		int level = path.size()-1;
+		while (level >= 0 && getNumOfKeys(d, path.get(level)) == getMaxKeys(d)) {
+			needed++;
+			level--;
+		}
+		if (level < 0)
+			needed++;
+		int[] newBlocks = BlockManager.allocate(d, needed);
+		int taken = 0;
+
+		int half = names.size() / 2;
+		int newLeaf = newBlocks[taken++];
+		writeLeaf(d, newLeaf, names.subList(half, names.size()), iNodes.subList(half, iNodes.size()), nextLeaf);
+		writeLeaf(d, leaf, names.subList(0, half), iNodes.subList(0, half), newLeaf);
+
+		String key = names.get(half);   // key to insert in the parent
+		int newChild = newLeaf;         // node that follows the key
+		for (level = path.size()-1; level >= 0 && key != null; level--) {
+			int node = path.get(level);
+			ArrayList<String> keys = new ArrayList<>();
+			ArrayList<Integer> children = new ArrayList<>();
+			readNode(DiskUtils.copyBlockToVDB(d, node), keys, children);
+			pos = 0;
+			while (pos < keys.size() && keys.get(pos).compareTo(key) < 0)
+				pos++;
+			keys.add(pos, key);
+			children.add(pos+1, newChild);
+			if (keys.size() <= getMaxKeys(d)) {
+				writeNode(d, node, keys, children);
+				key = null;
+			}
+			else {   // the middle key goes up, the keys after it to a new node
+				int mid = keys.size() / 2;
+				int newNode = newBlocks[taken++];
+				writeNode(d, newNode, keys.subList(mid+1, keys.size()), children.subList(mid+1, children.size()));
+				writeNode(d, node, keys.subList(0, mid), children.subList(0, mid+1));
+				key = keys.get(mid);
+				newChild = newNode;
+			}
+		}
+
+		if (key != null) {   // the top node was split, the tree grows one level
+			int oldTop = DiskUtils.getIntFromBlock(rootBlock, 0);
+			int newTop = newBlocks[taken++];
+			writeNode(d, newTop, Arrays.asList(key), Arrays.asList(oldTop, newChild));
+			DiskUtils.copyIntToBlock(rootBlock, 0, newTop);
+			DiskUtils.copyIntToBlock(rootBlock, 4, DiskUtils.getIntFromBlock(rootBlock, 4) + 1);
+			d.write(root, rootBlock);
+		}
+	}
+
+	/**
+	 * Removes the entry from its leaf, moving the entries after it one place back.
+	 */
+	public int remove(DiskUnit d, int root, String name) {
+		int leaf = findLeaf(d, root, name, null);
+		if (leaf == 0)
+			return -1;
+		VirtualDiskBlock vdb = DiskUtils.copyBlockToVDB(d, leaf);
+		Integer bytePos = FileLoaderAndManager.findFileInDirBlock(vdb, name);
+		if (bytePos == null)
+			return -1;
+		int iNodeIndex = DiskUtils.getIntFromBlock(vdb, bytePos+20);
+		int end = getLeafCapacity(d) * 24;   // end of the entries of a leaf
+		byte[] bytes = vdb.getBytes();
+		System.arraycopy(bytes, bytePos+24, bytes, bytePos, end - bytePos - 24);
+		Arrays.fill(bytes, end-24, end, (byte) 0);
+		d.write(leaf, vdb);
+		return iNodeIndex;
+	}
+
+	/**
+	 * The leaves, from the first one on.
+	 */
+	public int[] getEntryBlocks(DiskUnit d, int root) {
+		VirtualDiskBlock rootBlock = DiskUtils.copyBlockToVDB(d, root);
+		int node = DiskUtils.getIntFromBlock(rootBlock, 0);
+		if (node == 0)
+			return new int[0];
+		for (int level = DiskUtils.getIntFromBlock(rootBlock, 4); level > 0; level--)
+			node = DiskUtils.getIntFromBlock(DiskUtils.copyBlockToVDB(d, node), 4);   // first child
+		return ChainedFileLayout.toArray(FileLoaderAndManager.allFileBlockNums(d, node));
+	}
+
+	/**
+	 * Reads the leaves from the one where the prefix would be and stops at the
+	 * first name past the prefix.
+	 */
+	public ArrayList<String> findByPrefix(DiskUnit d, int root, String prefix, ArrayList<Integer> iNodes) {
+		ArrayList<String> found = new ArrayList<>();
+		for (int leaf = findLeaf(d, root, prefix, null); leaf != 0; ) {
+			VirtualDiskBlock vdb = DiskUtils.copyBlockToVDB(d, leaf);
+			ArrayList<String> names = new ArrayList<>();
+			ArrayList<Integer> leafINodes = new ArrayList<>();
+			readLeaf(vdb, names, leafINodes);
+			for (int i=0; i < names.size(); i++) {
+				String name = names.get(i);
+				if (name.startsWith(prefix)) {
+					found.add(name);
+					if (iNodes != null)
+						iNodes.add(leafINodes.get(i));
+				}
+				else if (name.compareTo(prefix) > 0)   // past every name with the prefix
+					return found;
+			}
+			leaf = DiskUtils.getIntFromBlock(vdb, d.getBlockSize()-4);
+		}
+		return found;
+	}
+
+	/**
+	 * Finds the leaf where the entry of a name is, or should be.
+	 * @param d DiskUnit in use.
+	 * @param root Root of the directory.
+	 * @param name Name of the file, formatted to 20 characters.
+	 * @param path If not null, the internal nodes read, from the top down, are added to it.
+	 * @return Number of the leaf, 0 if the directory is empty.
+	 */
+	private int findLeaf(DiskUnit d, int root, String name, List<Integer> path) {
+		VirtualDiskBlock rootBlock = DiskUtils.copyBlockToVDB(d, root);
+		int node = DiskUtils.getIntFromBlock(rootBlock, 0);
+		if (node == 0)
+			return 0;
+		for (int level = DiskUtils.getIntFromBlock(rootBlock, 4); level > 0; level--) {
+			if (path != null)
+				path.add(node);
+			VirtualDiskBlock vdb = DiskUtils.copyBlockToVDB(d, node);
+			int numOfKeys = DiskUtils.getIntFromBlock(vdb, 0);
+			int child = DiskUtils.getIntFromBlock(vdb, 4);
+			for (int i=0; i < numOfKeys && FileLoaderAndManager.getNameInEntry(vdb, 8 + 24*i).compareTo(name) <= 0; i++)
+				child = DiskUtils.getIntFromBlock(vdb, 28 + 24*i);
+			node = child;
+		}
+		return node;
+	}
+
+	/**
+	 * Number of entries that fit in a leaf.
+	 * @param d DiskUnit in use.
+	 * @return Entries per leaf.
+	 */
+	private int getLeafCapacity(DiskUnit d) {
+		return (d.getBlockSize() - 4) / 24;
+	}
+
+	/**
+	 * Number of keys that fit in an internal node.
+	 * @param d DiskUnit in use.
+	 * @return Keys per internal node.
+	 */
+	private int getMaxKeys(DiskUnit d) {
+		return (d.getBlockSize() - 8) / 24;
+	}
+
+	/**
+	 * Number of keys of an internal node.
+	 * @param d DiskUnit in use.
+	 * @param node Number of the block of the node.
+	 * @return Keys in the node.
+	 */
+	private int getNumOfKeys(DiskUnit d, int node) {
+		return DiskUtils.getIntFromBlock(DiskUtils.copyBlockToVDB(d, node), 0);
+	}
+
+	/**
+	 * Reads the entries of a leaf, in order.
+	 * @param vdb Virtual block of the leaf.
+	 * @param names List where the names are added.
+	 * @param iNodes List where the i-node indexes are added.
+	 */
+	private void readLeaf(VirtualDiskBlock vdb, List<String> names, List<Integer> iNodes) {
+		for (int bytePos=0; bytePos + 24 <= vdb.getCapacity() - 4; bytePos += 24) {
+			int iNodeIndex = DiskUtils.getIntFromBlock(vdb, bytePos+20);
+			if (iNodeIndex == 0)   // no more entries in the leaf
+				break;
+			names.add(FileLoaderAndManager.getNameInEntry(vdb, bytePos));
+			iNodes.add(iNodeIndex);
+		}
+	}
+
+	/**
+	 * Writes a leaf.
+	 * @param d DiskUnit in use.
+	 * @param leaf Number of the block of the leaf.
+	 * @param names Names of the entries, in order.
+	 * @param iNodes Indexes of the i-nodes of the entries.
+	 * @param nextLeaf Number of the next leaf, 0 for the last one.
+	 */
+	private void writeLeaf(DiskUnit d, int leaf, List<String> names, List<Integer> iNodes, int nextLeaf) {
+		VirtualDiskBlock vdb = new VirtualDiskBlock(d.getBlockSize());
+		for (int i=0; i < names.size(); i++) {
+			for (int j=0; j < 20; j++)
+				DiskUtils.copyCharToBlock(vdb, 24*i + j, names.get(i).charAt(j));
+			DiskUtils.copyIntToBlock(vdb, 24*i + 20, iNodes.get(i));
+		}
+		DiskUtils.copyIntToBlock(vdb, d.getBlockSize()-4, nextLeaf);
+		d.write(leaf, vdb);
+	}
+
+	/**
+	 * Reads the keys and children of an internal node.
+	 * @param vdb Virtual block of the node.
+	 * @param keys List where the keys are added.
+	 * @param children List where the children are added, one more than the keys.
+	 */
+	private void readNode(VirtualDiskBlock vdb, List<String> keys, List<Integer> children) {
+		int numOfKeys = DiskUtils.getIntFromBlock(vdb, 0);
+		children.add(DiskUtils.getIntFromBlock(vdb, 4));
+		for (int i=0; i < numOfKeys; i++) {
+			keys.add(FileLoaderAndManager.getNameInEntry(vdb, 8 + 24*i));
+			children.add(DiskUtils.getIntFromBlock(vdb, 28 + 24*i));
+		}
+	}
+
+	/**
+	 * Writes an internal node.
+	 * @param d DiskUnit in use.
+	 * @param node Number of the block of the node.
+	 * @param keys Keys of the node, in order.
+	 * @param children Children of the node, one more than the keys.
+	 */
+	private void writeNode(DiskUnit d, int node, List<String> keys, List<Integer> children) {
+		VirtualDiskBlock vdb = new VirtualDiskBlock(d.getBlockSize());
+		DiskUtils.copyIntToBlock(vdb, 0, keys.size());
+		DiskUtils.copyIntToBlock(vdb, 4, children.get(0));
+		for (int i=0; i < keys.size(); i++) {
+			for (int j=0; j < 20; j++)
+				DiskUtils.copyCharToBlock(vdb, 8 + 24*i + j, keys.get(i).charAt(j));
+			DiskUtils.copyIntToBlock(vdb, 28 + 24*i, children.get(i+1));
+		}
+		d.write(node, vdb);
+	}
+
+}
@@ -0,0 +1,222 @@
+package diskUtilities;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Bounded cache of disk blocks that sits between the managers and the block 
+ * device of a DiskUnit. Repeated reads of the same block are served from memory and repeated
+ * writes to the same block are coalesced: a written block is only marked as dirty
+ * and is written back into the disk when it is evicted or the cache is flushed.
+ * The least recently used block is the one evicted when the cache is full.
+ * Its methods are synchronized, so several threads transferring blocks of
+ * the same unit may use it at once.
+ * @author Francisco Diaz
+ *
+ */
+public class BlockCache {
+
+	private BlockDevice device;   // Device whose blocks are cached
+	private int maxBlocks;        // Maximum number of blocks kept in the cache
+	private LinkedHashMap<Integer, CachedBlock> blocks;  // Block number -> cached content, in access order
+
+	private long hits;            // Reads served from the cache
+	private long misses;          // Reads that had to go to the disk
+	private long writeBacks;      // Dirty blocks written into the disk
+
+	/**
+	 * Content of a cached block and whether it differs from the one in the disk.
+	 */
+	private static class CachedBlock {
+		private byte[] bytes;
+		private boolean dirty;
+
+		private CachedBlock(int blockSize) {
+			bytes = new byte[blockSize];
+		}
+	}
+
+	/**
+	 * Creates an empty cache for the given device.
+	 * @param device BlockDevice whose blocks are cached.
+	 * @param maxBlocks Maximum number of blocks kept in the cache.
+	 */
+	public BlockCache(BlockDevice device, int maxBlocks) {
+		this.device = device;
+		this.maxBlocks = maxBlocks;
+		blocks = new LinkedHashMap<Integer, CachedBlock>(16, 0.75f, true) {
+			private static final long serialVersionUID = 1L;
+
+			@Override
+			protected boolean removeEldestEntry(Map.Entry<Integer, CachedBlock> eldest) {
+				if (size() <= BlockCache.this.maxBlocks)
+					return false;
+				try {
+					writeBack(eldest.getKey(), eldest.getValue());
+				} catch (IOException e) {
+					e.printStackTrace();
+				}
+				return true;
+			}
+		};
+	}
+
+	/**
+	 * Copies the content of block blockNum into a virtual disk block, reading
+	 * it from the disk only if it is not in the cache.
+	 * @param blockNum Number of the disk block to read.
+	 * @param b Virtual disk block in which the content is copied.
+	 * @throws IOException If the block could not be read from the disk.
+	 */
+	public synchronized void read(int blockNum, VirtualDiskBlock b) throws IOException {
+		CachedBlock cb = blocks.get(blockNum);
+		if (cb == null) {
+			misses++;
+			device.read(blockNum, b);
+			cb = new CachedBlock(b.getCapacity());
+			System.arraycopy(b.getBytes(), 0, cb.bytes, 0, cb.bytes.length);
+			blocks.put(blockNum, cb);
+		}
+		else {
+			hits++;
+			System.arraycopy(cb.bytes, 0, b.getBytes(), 0, cb.bytes.length);
+		}
+	}
+
+	/**
+	 * Copies a virtual disk block into the cached block blockNum and marks
+	 * it as dirty. The disk is not written until the block is evicted or flushed.
+	 * @param blockNum Number of the disk block to write.
+	 * @param b Virtual disk block with the new content.
+	 */
+	public synchronized void write(int blockNum, VirtualDiskBlock b) {
+		CachedBlock cb = blocks.get(blockNum);
+		if (cb == null) {   // the whole block is replaced, no need to read it
+			cb = new CachedBlock(b.getCapacity());
+			System.arraycopy(b.getBytes(), 0, cb.bytes, 0, cb.bytes.length);
+			cb.dirty = true;
+			blocks.put(blockNum, cb);
+		}
+		else {
+			System.arraycopy(b.getBytes(), 0, cb.bytes, 0, cb.bytes.length);
+			cb.dirty = true;
+		}
+	}
+
+	/**
+	 * Replaces the cached copies, if any, of a run of blocks that is written directly
+	 * into the disk. The copies are left clean.
+	 * @param firstBlockNum Number of the first disk block of the run.
+	 * @param run Virtual disk blocks being written.
+	 */
+	public synchronized void update(int firstBlockNum, VirtualDiskBlock[] run) {
+		for (int i=0; i < run.length; i++) {
+			CachedBlock cb = blocks.get(firstBlockNum + i);
+			if (cb != null) {
+				System.arraycopy(run[i].getBytes(), 0, cb.bytes, 0, cb.bytes.length);
+				cb.dirty = false;
+			}
+		}
+	}
+
+	/**
+	 * Copies the cached blocks of a run, that was read directly from the disk, over
+	 * the blocks read, since the cached content may be newer than the disk's.
+	 * @param firstBlockNum Number of the first disk block of the run.
+	 * @param run Virtual disk blocks read.
+	 */
+	public synchronized void overlay(int firstBlockNum, VirtualDiskBlock[] run) {
+		for (int i=0; i < run.length; i++) {
+			CachedBlock cb = blocks.get(firstBlockNum + i);
+			if (cb != null)
+				System.arraycopy(cb.bytes, 0, run[i].getBytes(), 0, cb.bytes.length);
+		}
+	}
+
+	/**
+	 * Drops the cached copies, if any, of a run of blocks that is discarded, without
+	 * writing them back even if they are dirty.
+	 * @param firstBlockNum Number of the first disk block of the run.
+	 * @param numOfBlocks Number of blocks of the run.
+	 */
+	public synchronized void discard(int firstBlockNum, int numOfBlocks) {
+		Iterator<Integer> it = blocks.keySet().iterator();
+		while (it.hasNext()) {
+			int blockNum = it.next();
+			if (blockNum >= firstBlockNum && blockNum < firstBlockNum + numOfBlocks)
+				it.remove();
+		}
+	}
+
+	/**
+	 * Writes every dirty block into the disk, in block number order. The blocks
+	 * stay in the cache as clean blocks.
+	 * @throws IOException If a block could not be written.
+	 */
+	public synchronized void flush() throws IOException {
+		ArrayList<Integer> dirtyBlocks = new ArrayList<>();
+		for (Map.Entry<Integer, CachedBlock> entry : blocks.entrySet())
+			if (entry.getValue().dirty)
+				dirtyBlocks.add(entry.getKey());
+		Collections.sort(dirtyBlocks);   // sequential order in the file
+		for (Integer blockNum : dirtyBlocks)
+			writeBack(blockNum, blocks.get(blockNum));
+	}
+
+	/**
+	 * Writes a cached block into the disk if it is dirty.
+	 * @param blockNum Number of the disk block.
+	 * @param cb Cached content of the block.
+	 * @throws IOException If the block could not be written.
+	 */
+	private void writeBack(int blockNum, CachedBlock cb) throws IOException {
+		if (!cb.dirty)
+			return;
+		VirtualDiskBlock vdb = new VirtualDiskBlock(cb.bytes.length);
+		System.arraycopy(cb.bytes, 0, vdb.getBytes(), 0, cb.bytes.length);
+		device.write(blockNum, vdb);
+		cb.dirty = false;
+		writeBacks++;
+	}
+
+	public synchronized long getHits() {
+		return hits;
+	}
+
+	public synchronized long getMisses() {
+		return misses;
+	}
+
+	public synchronized long getWriteBacks() {
+		return writeBacks;
+	}
+
+	public int getMaxBlocks() {
+		return maxBlocks;
+	}
+
+	/**
+	 * Number of blocks currently in the cache.
+	 * @return Number of cached blocks.
+	 */
+	public synchronized int size() {
+		return blocks.size();
+	}
+
+	/**
+	 * Number of cached blocks whose content has not been written into the disk.
+	 * @return Number of dirty blocks.
+	 */
+	public synchronized int dirtyBlocks() {
+		int counter = 0;
+		for (CachedBlock cb : blocks.values())
+			if (cb.dirty)
+				counter++;
+		return counter;
+	}
+
+}
@@ -0,0 +1,92 @@
+package diskUtilities;
+
+import java.io.IOException;
+
+/**
+ * Storage where the blocks of a disk unit live. A DiskUnit validates the
+ * requests, keeps the control data and the block cache, and transfers the
+ * blocks through one of these devices: a random access file, a memory-mapped 
+ * file or a RAM disk in the heap. Several threads may read and write
+ * different blocks of a device at once.
+ * @author Francisco Diaz
+ *
+ */
+public interface BlockDevice {
+
+	/**
+	 * Number of blocks of the device.
+	 * @return Capacity of the device in blocks.
+	 */
+	int getCapacity();
+
+	/**
+	 * Number of bytes per block of the device.
+	 * @return Block size of the device.
+	 */
+	int getBlockSize();
+
+	/**
+	 * Copies the block blockNum of the device into a virtual disk block.
+	 * @param blockNum Number of the block to read. It is assumed to be valid.
+	 * @param b Virtual disk block of the device's block size.
+	 * @throws IOException If the block could not be read.
+	 */
+	void read(int blockNum, VirtualDiskBlock b) throws IOException;
+
+	/**
+	 * Copies a virtual disk block into the block blockNum of the device.
+	 * @param blockNum Number of the block to write. It is assumed to be valid.
+	 * @param b Virtual disk block of the device's block size.
+	 * @throws IOException If the block could not be written.
+	 */
+	void write(int blockNum, VirtualDiskBlock b) throws IOException;
+
+	/**
+	 * Copies the run of consecutive blocks starting at firstBlockNum into blocks.
+	 * @param firstBlockNum Number of the first block of the run.
+	 * @param blocks Virtual disk blocks, blocks[i] receives block firstBlockNum+i.
+	 * @throws IOException If the blocks could not be read.
+	 */
+	void readBlocks(int firstBlockNum, VirtualDiskBlock[] blocks) throws IOException;
+
+	/**
+	 * Copies blocks into the run of consecutive blocks starting at firstBlockNum.
+	 * @param firstBlockNum Number of the first block of the run.
+	 * @param blocks Virtual disk blocks, blocks[i] is written into block firstBlockNum+i.
+	 * @throws IOException If the blocks could not be written.
+	 */
+	void writeBlocks(int firstBlockNum, VirtualDiskBlock[] blocks) throws IOException;
+
+	/**
+	 * Tells the device that the content of a run of blocks is no longer needed.
+	 * It is only advice: the blocks may keep their old content or read as zeros
+	 * afterwards, so they must be written before they are read again. Devices stored
+	 * in a file cut it off when the run reaches its end, without writing zeros.
+	 * @param firstBlockNum Number of the first block of the run.
+	 * @param numOfBlocks Number of blocks of the run.
+	 * @throws IOException If the blocks could not be discarded.
+	 */
+	void discard(int firstBlockNum, int numOfBlocks) throws IOException;
+
+	/**
+	 * Sets every byte of a run of blocks to zero, without reading them. Blocks that
+	 * already read as zeros without being stored are left as they are.
+	 * @param firstBlockNum Number of the first block of the run.
+	 * @param numOfBlocks Number of blocks of the run.
+	 * @throws IOException If the blocks could not be written.
+	 */
+	void zero(int firstBlockNum, int numOfBlocks) throws IOException;
+
+	/**
+	 * Forces every change made to the device onto its persistent storage, if any.
+	 * @throws IOException If the changes could not be written.
+	 */
+	void sync() throws IOException;
+
+	/**
+	 * Releases the resources of the device. Changes not synced may be lost.
+	 * @throws IOException If the device could not be closed.
+	 */
+	void close() throws IOException;
+
+}
@@ -2,12 +2,18 @@ package diskUtilities;
 
 import java.io.IOException;
 import java.io.RandomAccessFile;
+import java.util.Arrays;
+import java.util.BitSet;
 
 import diskExceptions.FullDiskException;
 
 /**
  * Class that manages the blocks
- * In this implementation works like a tree structure
+ * In this implementation works like a tree structure, unless the disk was
+ * formatted with a free-space bitmap (SuperBlock.FREE_SPACE_BITMAP), in which
+ * case the free blocks are taken from and returned to the bitmap kept in memory.
+ * Blocks at or above the high-water mark in the header were never used: they are
+ * free without being part of the tree and are taken once the tree is empty.
  * @author Francisco Diaz
  *
  */
@@ -38,13 +44,26 @@ public class BlockManager {
 	 * @return Returns Block Number of free Block
 	 */
 	public static int getFreeBlockNumber(DiskUnit disk) throws FullDiskException {
+		FreeSpaceBitmap bitmap = disk.getFreeSpaceBitmap();
+		if (bitmap != null) {
+			int bn = bitmap.allocate();
+			if (bn < 0)
+				throw new FullDiskException("Disk is full.");
+			return bn;
+		}
+		
 		int intergersInBlock = disk.getBlockSize() / 4;
 		int firstFLB = disk.getFirstDataBlock();
 		int flIndex = disk.getNextFreeBlock();
 		int bn;
 		
-		if (firstFLB == 0)
-			throw new FullDiskException("Disk is full.");
+		if (firstFLB == 0) {  // the free block collection is empty, take the block at the high-water mark
+			int highWaterMark = disk.getHighWaterMark();
+			if (highWaterMark == 0 || highWaterMark >= disk.getCapacity())
+				throw new FullDiskException("Disk is full.");
+			disk.setFreeBlockRoot(firstFLB, flIndex, highWaterMark+1);
+			return highWaterMark;
+		}
 		// disk has space
 		if (flIndex != 0) {
 			bn = getIntInsideBlock(disk, firstFLB, flIndex);
@@ -68,6 +87,11 @@ public class BlockManager {
 	 * @param bn Index of the freed block.
 	 */
 	public static void registerFB(DiskUnit d, int bn) {
+		if (d.getFreeSpaceBitmap() != null) {
+			d.getFreeSpaceBitmap().free(bn);
+			return;
+		}
+		
 		int INTEGERS_IN_BLOCK = d.getBlockSize() / 4;
 		int firstFLB = d.getFirstDataBlock();
 		int flIndex = d.getNextFreeBlock();
@@ -88,6 +112,212 @@ public class BlockManager {
 		}
 	}
 	
+	/**
+	 * Takes n free blocks with a single pass over the free block structure: each root
+	 * block of the tree is read and written once and the header is updated once.
+	 * @param disk DiskUnit to be used
+	 * @param n Number of blocks to take.
+	 * @return Block numbers of the free blocks taken, in increasing order.
+	 * @throws FullDiskException If the disk does not have n free blocks, in which
+	 * case no block is taken.
+	 */
+	public static int[] allocate(DiskUnit disk, int n) throws FullDiskException {
+		int[] blocks = new int[n];
+		if (n == 0)
+			return blocks;
+		FreeSpaceBitmap bitmap = disk.getFreeSpaceBitmap();
+		if (bitmap != null) {
+			int first = (n > 1) ? bitmap.allocateRun(n) : -1;   // consecutive blocks are transferred at once
+			if (first >= 0) {
+				for (int i=0; i < n; i++)
+					blocks[i] = first + i;
+				return blocks;
+			}
+			blocks = bitmap.allocate(n);   // no run is long enough, take the closest free blocks
+			if (blocks == null)
+				throw new FullDiskException("Disk is full.");
+			return blocks;
+		}
+		
+		int integersInBlock = disk.getBlockSize() / 4;
+		int firstFLB = disk.getFirstDataBlock();
+		int flIndex = disk.getNextFreeBlock();
+		int highWaterMark = disk.getHighWaterMark();
+		VirtualDiskBlock root = null;  // content of block firstFLB
+		int taken = 0;
+		while (taken < n) {
+			if (firstFLB == 0) {  // the free block collection is empty, use the blocks never used
+				if (highWaterMark == 0 || highWaterMark >= disk.getCapacity()) {  // not enough free blocks, give back those taken
+					disk.setFreeBlockRoot(firstFLB, flIndex, highWaterMark);
+					release(disk, Arrays.copyOf(blocks, taken));
+					throw new FullDiskException("Disk is full.");
+				}
+				blocks[taken++] = highWaterMark++;
+				continue;
+			}
+			if (root == null)
+				root = DiskUtils.copyBlockToVDB(disk, firstFLB);
+			if (flIndex != 0) {
+				blocks[taken++] = DiskUtils.getIntFromBlock(root, 4*flIndex);
+				DiskUtils.copyIntToBlock(root, 4*flIndex, 0);
+				flIndex--;
+			} else {   // the root itself is taken, the next node becomes the root
+				blocks[taken++] = firstFLB;
+				int nextFLB = DiskUtils.getIntFromBlock(root, 0);
+				DiskUtils.copyIntToBlock(root, 0, 0);
+				disk.write(firstFLB, root);
+				root = null;
+				firstFLB = nextFLB;
+				flIndex = integersInBlock-1;
+			}
+		}
+		if (root != null)
+			disk.write(firstFLB, root);
+		disk.setFreeBlockRoot(firstFLB, flIndex, highWaterMark);
+		
+		Arrays.sort(blocks);
+		return blocks;
+	}
+	
+	/**
+	 * Inserts a group of freed blocks into the free block structure, writing each
+	 * root block once and updating the header once. The blocks are inserted from
+	 * the highest number to the lowest, so that they are taken again in increasing order.
+	 * @param d DiskUnit
+	 * @param blocks Block numbers of the freed blocks.
+	 */
+	public static void release(DiskUnit d, int[] blocks) {
+		if (d.getFreeSpaceBitmap() != null) {
+			for (int bn : blocks)
+				d.getFreeSpaceBitmap().free(bn);
+			return;
+		}
+		if (blocks.length == 0)
+			return;
+		
+		int integersInBlock = d.getBlockSize() / 4;
+		int firstFLB = d.getFirstDataBlock();
+		int flIndex = d.getNextFreeBlock();
+		VirtualDiskBlock root = (firstFLB != 0) ? DiskUtils.copyBlockToVDB(d, firstFLB) : null;
+		int[] sorted = blocks.clone();
+		Arrays.sort(sorted);
+		for (int i=sorted.length-1; i >= 0; i--) {
+			int bn = sorted[i];
+			if (firstFLB == 0 || flIndex == integersInBlock-1) { // the freed block becomes the new root
+				if (root != null)
+					d.write(firstFLB, root);
+				root = new VirtualDiskBlock(d.getBlockSize());
+				DiskUtils.copyIntToBlock(root, 0, firstFLB);
+				firstFLB = bn;
+				flIndex = 0;
+			} else {
+				flIndex++;
+				DiskUtils.copyIntToBlock(root, 4*flIndex, bn);
+			}
+		}
+		d.write(firstFLB, root);
+		d.setFreeBlockRoot(firstFLB, flIndex);
+	}
+	
+	/**
+	 * Discards the content of a group of blocks, one run of consecutive block
+	 * numbers at a time, instead of writing zeros into them.
+	 * @param d DiskUnit in use
+	 * @param blocks Block numbers of the blocks to discard.
+	 */
+	public static void discard(DiskUnit d, int[] blocks) {
+		int[] sorted = blocks.clone();
+		Arrays.sort(sorted);
+		int runStart = 0;
+		for (int i=1; i <= sorted.length; i++) {
+			if (i == sorted.length || sorted[i] != sorted[i-1]+1) {
+				d.discard(sorted[runStart], i - runStart);
+				runStart = i;
+			}
+		}
+	}
+	
+	/**
+	 * Adds a reference to each of a group of data blocks, which a new file shares
+	 * with the files that already reference them. The disk is marked as having
+	 * shared blocks, so that their references are rebuilt when it is mounted.
+	 * @param d DiskUnit in use
+	 * @param blocks Block numbers of the shared blocks.
+	 */
+	public static void share(DiskUnit d, int[] blocks) {
+		for (int bn : blocks)
+			d.getBlockReferences().addReference(bn);
+		d.setFormatFlag(SuperBlock.SHARED_BLOCKS, true);
+	}
+	
+	/**
+	 * Removes the reference of a file to each of a group of data blocks.
+	 * @param d DiskUnit in use
+	 * @param blocks Block numbers of the blocks of the file.
+	 * @return Block numbers of the blocks that no other file references, to be freed.
+	 */
+	public static int[] dropReferences(DiskUnit d, int[] blocks) {
+		BlockReferences references = d.getBlockReferences();
+		if (references.isEmpty())
+			return blocks;
+		int[] unreferenced = new int[blocks.length];
+		int count = 0;
+		for (int bn : blocks)
+			if (!references.removeReference(bn))
+				unreferenced[count++] = bn;
+		return Arrays.copyOf(unreferenced, count);
+	}
+	
+	/**
+	 * Determines if any of a group of data blocks is shared by several files.
+	 * @param d DiskUnit in use
+	 * @param blocks Block numbers of the blocks.
+	 * @return True if any block is shared.
+	 */
+	public static boolean isShared(DiskUnit d, int[] blocks) {
+		BlockReferences references = d.getBlockReferences();
+		if (references.isEmpty())
+			return false;
+		for (int bn : blocks)
+			if (references.isShared(bn))
+				return true;
+		return false;
+	}
+	
+	/**
+	 * Rebuilds the reference counts of the shared data blocks of a disk from the
+	 * block maps of the files of its root directory. If no block is shared anymore
+	 * the disk is no longer marked as having shared blocks.
+	 * @param d DiskUnit in use
+	 */
+	public static void rebuildReferences(DiskUnit d) {
+		BlockReferences references = d.getBlockReferences();
+		references.clear();
+		FileLayout layout = d.getFileLayout();
+		BitSet referenced = new BitSet(d.getCapacity());
+		
+		int rootBlockNum = iNodesManager.getFirstDataBlockFromiNode(d, 0);
+		for (int dirBlockNum : iNodesManager.getDirectory(d, 0).getEntryBlocks(d, rootBlockNum)) {
+			VirtualDiskBlock vdb = DiskUtils.copyBlockToVDB(d, dirBlockNum);
+			for (int i=1; i <= (d.getBlockSize() - 4) / 24; i++) {
+				int iNodeRef = DiskUtils.getIntFromBlock(vdb, (i*24)-4); // i-node index after the file name
+				if (iNodeRef == 0)
+					break;
+				int root = iNodesManager.getFirstDataBlockFromiNode(d, iNodeRef);
+				if (root == 0)   // the file has no blocks
+					continue;
+				long size = iNodesManager.getSizeiNode(d, iNodeRef);
+				for (int bn : layout.getBlocks(d, root, layout.getNumOfBlocks(size))) {
+					if (referenced.get(bn))
+						references.addReference(bn);
+					referenced.set(bn);
+				}
+			}
+		}
+		if (references.isEmpty())
+			d.setFormatFlag(SuperBlock.SHARED_BLOCKS, false);
+	}
+	
 	/**
 	 * Sets an integer in the provided index inside a free data block.
 	 * Equivalent to block[index] = value;
@@ -118,14 +348,16 @@ public class BlockManager {
 	}
 	
 	/**
-	 * Initializes the free block structure. 
+	 * Initializes the free block structure. A free-space bitmap is already
+	 * initialized when the disk is created. Otherwise the free block collection
+	 * starts empty and the high-water mark is set at the first data block, so
+	 * every data block is free without being registered one by one.
 	 * @param disk DiskUnit in use
 	 */
 	public static void initializeFreeBlocks(DiskUnit disk) {
-		int firstFreeBlock = disk.getFirstDataBlock();
-		for (int i=firstFreeBlock+1; i < disk.getCapacity(); i++) {
-			registerFB(disk, i);
-		}
+		if (disk.getFreeSpaceBitmap() != null)
+			return;
+		disk.setFreeBlockRoot(0, 0, disk.getFirstDataBlock());
 	}
 	
 	
@@ -0,0 +1,67 @@
+package diskUtilities;
+
+import java.util.HashMap;
+
+/**
+ * Reference counts of the data blocks shared by several files of a disk unit,
+ * which "reflink" copies create. Only the shared blocks are kept, each with the
+ * number of references it has beyond the first one, so a disk without shared 
+ * blocks keeps an empty table. The table is not stored in the disk: while the
+ * disk has SuperBlock.SHARED_BLOCKS set, BlockManager rebuilds it at mount from 
+ * the block maps of the files.
+ * @author Francisco Diaz
+ *
+ */
+public class BlockReferences {
+
+	private HashMap<Integer, Integer> extraReferences = new HashMap<>();  // Block number -> references beyond the first
+
+	/**
+	 * Adds a reference to a block that is already referenced by a file.
+	 * @param bn Number of the block.
+	 */
+	public void addReference(int bn) {
+		extraReferences.merge(bn, 1, Integer::sum);
+	}
+
+	/**
+	 * Removes a reference to a block.
+	 * @param bn Number of the block.
+	 * @return True if the block is still referenced by another file.
+	 */
+	public boolean removeReference(int bn) {
+		Integer extra = extraReferences.get(bn);
+		if (extra == null)
+			return false;
+		if (extra == 1)
+			extraReferences.remove(bn);
+		else
+			extraReferences.put(bn, extra - 1);
+		return true;
+	}
+
+	/**
+	 * Determines if a block is referenced by more than one file.
+	 * @param bn Number of the block.
+	 * @return True if the block is shared.
+	 */
+	public boolean isShared(int bn) {
+		return extraReferences.containsKey(bn);
+	}
+
+	/**
+	 * Determines if no block is shared.
+	 * @return True if the table is empty.
+	 */
+	public boolean isEmpty() {
+		return extraReferences.isEmpty();
+	}
+
+	/**
+	 * Forgets every reference.
+	 */
+	public void clear() {
+		extraReferences.clear();
+	}
+
+}
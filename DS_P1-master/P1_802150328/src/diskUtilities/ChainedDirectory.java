@@ -0,0 +1,45 @@
+package diskUtilities;
+
+import java.util.ArrayList;
+
+import diskExceptions.FullDiskException;
+
+/**
+ * Original directory: a chain of directory blocks whose entries are filled in 
+ * order, so that finding a file means reading the blocks until its entry.
+ * @author Francisco Diaz
+ *
+ */
+public class ChainedDirectory implements Directory {
+
+	public void create(DiskUnit d, int root) {
+		d.write(root, new VirtualDiskBlock(d.getBlockSize()));   // no entries and no next block
+	}
+
+	public ArrayList<Integer> find(DiskUnit d, int root, String name) {
+		return FileLoaderAndManager.findFileInDir(d, name, root);
+	}
+
+	public void add(DiskUnit d, int root, String name, int iNodeIndex) throws FullDiskException {
+		ArrayList<Integer> freePos = FileLoaderAndManager.getFreePosInDirectory(d, root, d.getBlockSize());
+		FileLoaderAndManager.writeEntry(d, freePos.get(0), freePos.get(1), name, iNodeIndex);
+	}
+
+	public int remove(DiskUnit d, int root, String name) {
+		ArrayList<Integer> fileInfo = find(d, root, name);
+		if (fileInfo == null)
+			return -1;
+		int iNodeIndex = FileLoaderAndManager.getiNodeInEntry(d, fileInfo.get(0), fileInfo.get(1));
+		FileLoaderAndManager.removeEntry(d, fileInfo.get(0), fileInfo.get(1));
+		return iNodeIndex;
+	}
+
+	public int[] getEntryBlocks(DiskUnit d, int root) {
+		return ChainedFileLayout.toArray(FileLoaderAndManager.allFileBlockNums(d, root));
+	}
+
+	public ArrayList<String> findByPrefix(DiskUnit d, int root, String prefix, ArrayList<Integer> iNodes) {
+		return FileLoaderAndManager.findByPrefixInBlocks(d, getEntryBlocks(d, root), prefix, iNodes);
+	}
+
+}
@@ -0,0 +1,128 @@
+package diskUtilities;
+
+import java.util.List;
+
+/**
+ * Original layout of the data files: the i-node points to the first data block
+ * and the last 4 bytes of every data block hold the number of the next one (0 in
+ * the last block). Finding a block means reading every block before it.
+ * @author Francisco Diaz
+ *
+ */
+public class ChainedFileLayout implements FileLayout {
+
+	private int blockSize;   // bytes per block of the disk
+
+	public ChainedFileLayout(int blockSize) {
+		this.blockSize = blockSize;
+	}
+
+	public int getPayloadSize() {
+		return blockSize - 4;
+	}
+
+	/**
+	 * A chained file has at least one block, even when it is empty.
+	 */
+	public int getNumOfBlocks(long size) {
+		return (int) Math.max(1, (size + getPayloadSize() - 1) / getPayloadSize());
+	}
+
+	public void setNextBlock(VirtualDiskBlock vdb, int nextBlock) {
+		DiskUtils.copyIntToBlock(vdb, blockSize-4, nextBlock);
+	}
+
+	public int getBlock(DiskUnit d, int root, int index) {
+		int bn = root;
+		VirtualDiskBlock vdb = new VirtualDiskBlock(blockSize);
+		for (int i=0; i < index && bn != 0; i++) {
+			d.read(bn, vdb);
+			bn = DiskUtils.getIntFromBlock(vdb, blockSize-4);
+		}
+		return bn;
+	}
+
+	/**
+	 * Follows the chain up to the last block, whatever numOfBlocks says.
+	 */
+	public int[] getBlocks(DiskUnit d, int root, int numOfBlocks) {
+		return toArray(FileLoaderAndManager.allFileBlockNums(d, root));
+	}
+
+	public int[] getBlocks(DiskUnit d, int root, int firstIndex, int numOfBlocks) {
+		int[] blocks = new int[numOfBlocks];
+		if (numOfBlocks == 0)
+			return blocks;
+		blocks[0] = getBlock(d, root, firstIndex);
+		VirtualDiskBlock vdb = new VirtualDiskBlock(blockSize);
+		for (int i=1; i < numOfBlocks; i++) {
+			d.read(blocks[i-1], vdb);
+			blocks[i] = DiskUtils.getIntFromBlock(vdb, blockSize-4);
+		}
+		return blocks;
+	}
+
+	/**
+	 * The data blocks are already linked, the root is the first one (0 if there is none).
+	 */
+	public int createMap(DiskUnit d, int[] blocks) {
+		return (blocks.length == 0) ? 0 : blocks[0];
+	}
+
+	public int addBlock(DiskUnit d, int root, int index, int bn) {
+		if (index == 0)
+			return bn;
+		int last = getBlock(d, root, index-1);
+		VirtualDiskBlock vdb = DiskUtils.copyBlockToVDB(d, last);
+		setNextBlock(vdb, bn);
+		d.write(last, vdb);
+		return root;
+	}
+
+	/**
+	 * Links the first new block to the last one, the only block of the chain written.
+	 */
+	public int addBlocks(DiskUnit d, int root, int index, int last, int[] blocks) {
+		if (index == 0)
+			return blocks[0];
+		VirtualDiskBlock vdb = DiskUtils.copyBlockToVDB(d, last);
+		setNextBlock(vdb, blocks[0]);
+		d.write(last, vdb);
+		return root;
+	}
+
+	/**
+	 * Links the block before the range to the first new block, the only block of
+	 * the chain written.
+	 */
+	public int setBlocks(DiskUnit d, int root, int firstIndex, int[] blocks) {
+		if (firstIndex == 0)
+			return blocks[0];
+		int previous = getBlock(d, root, firstIndex-1);
+		VirtualDiskBlock vdb = DiskUtils.copyBlockToVDB(d, previous);
+		setNextBlock(vdb, blocks[0]);
+		d.write(previous, vdb);
+		return root;
+	}
+
+	public boolean linksDataBlocks() {
+		return true;
+	}
+
+	public int[] deleteMap(DiskUnit d, int root, int numOfBlocks) {
+		return getBlocks(d, root, numOfBlocks);
+	}
+
+	/**
+	 * Copies a list of block numbers into an array.
+	 * @param blockNums List of block numbers.
+	 * @return Array with the block numbers.
+	 */
+	static int[] toArray(List<Integer> blockNums) {
+		int[] blocks = new int[blockNums.size()];
+		for (int i=0; i < blocks.length; i++)
+			blocks[i] = blockNums.get(i);
+		return blocks;
+	}
+
+}
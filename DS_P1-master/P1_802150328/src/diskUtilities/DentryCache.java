@@ -0,0 +1,147 @@
+package diskUtilities;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Bounded cache of the names looked up in the directories of a mounted disk. An
+ * entry maps a name in a directory to the i-node of the file and, when known, to
+ * the directory block and byte position of its directory entry; a negative entry
+ * records that the name is not in the directory. Found names are answered without
+ * reading the directory, and so are names known to be missing. The least recently
+ * used entry is the one evicted when the cache is full.
+ * The i-node of a name does not change while the name is in the directory, but its
+ * directory entry may be moved by the Directory, so the position kept is only a
+ * hint that must be checked before it is used.
+ * @author Francisco Diaz
+ *
+ */
+public class DentryCache {
+
+	public static final int DEFAULT_MAX_ENTRIES = 1024;   // Names kept by the cache of a mounted disk
+
+	private int maxEntries;                            // Maximum number of names kept in the cache
+	private LinkedHashMap<String, Dentry> dentries;    // Directory i-node and name -> entry, in access order
+
+	private long hits;     // Lookups answered by the cache
+	private long misses;   // Lookups that had to read the directory
+
+	/**
+	 * What the cache knows about a name in a directory.
+	 */
+	public static class Dentry {
+		private int iNodeIndex;   // i-node of the file, -1 if the name is not in the directory
+		private int blockNum;     // directory block of the entry, 0 if unknown
+		private int bytePos;      // byte position of the entry in the block
+
+		private Dentry(int iNodeIndex, int blockNum, int bytePos) {
+			this.iNodeIndex = iNodeIndex;
+			this.blockNum = blockNum;
+			this.bytePos = bytePos;
+		}
+
+		public int getiNodeIndex() {
+			return iNodeIndex;
+		}
+
+		public int getBlockNum() {
+			return blockNum;
+		}
+
+		public int getBytePos() {
+			return bytePos;
+		}
+
+		/**
+		 * Determines if the entry records a missing name.
+		 * @return True if the name is not in the directory.
+		 */
+		public boolean isNegative() {
+			return iNodeIndex < 0;
+		}
+	}
+
+	/**
+	 * Creates an empty cache.
+	 * @param maxEntries Maximum number of names kept in the cache.
+	 */
+	public DentryCache(int maxEntries) {
+		this.maxEntries = maxEntries;
+		dentries = new LinkedHashMap<String, Dentry>(16, 0.75f, true) {
+			private static final long serialVersionUID = 1L;
+
+			@Override
+			protected boolean removeEldestEntry(Map.Entry<String, Dentry> eldest) {
+				return size() > DentryCache.this.maxEntries;
+			}
+		};
+	}
+
+	/**
+	 * Looks up a name in the cache.
+	 * @param dirINode Index of the i-node of the directory.
+	 * @param name Name of the file, formatted to 20 characters.
+	 * @return The entry of the name, negative if it is known to be missing, or null
+	 * if the cache knows nothing about it.
+	 */
+	public Dentry get(int dirINode, String name) {
+		Dentry dentry = dentries.get(key(dirINode, name));
+		if (dentry == null)
+			misses++;
+		else
+			hits++;
+		return dentry;
+	}
+
+	/**
+	 * Records that a name is in a directory.
+	 * @param dirINode Index of the i-node of the directory.
+	 * @param name Name of the file, formatted to 20 characters.
+	 * @param iNodeIndex Index of the i-node of the file.
+	 * @param blockNum Directory block of the entry, 0 if unknown.
+	 * @param bytePos Byte position of the entry in the block.
+	 */
+	public void put(int dirINode, String name, int iNodeIndex, int blockNum, int bytePos) {
+		dentries.put(key(dirINode, name), new Dentry(iNodeIndex, blockNum, bytePos));
+	}
+
+	/**
+	 * Records that a name is not in a directory.
+	 * @param dirINode Index of the i-node of the directory.
+	 * @param name Name of the file, formatted to 20 characters.
+	 */
+	public void putMissing(int dirINode, String name) {
+		dentries.put(key(dirINode, name), new Dentry(-1, 0, 0));
+	}
+
+	/**
+	 * Key of a name in the map.
+	 * @param dirINode Index of the i-node of the directory.
+	 * @param name Name of the file.
+	 * @return The key.
+	 */
+	private String key(int dirINode, String name) {
+		return dirINode + "/" + name;
+	}
+
+	public long getHits() {
+		return hits;
+	}
+
+	public long getMisses() {
+		return misses;
+	}
+
+	public int getMaxEntries() {
+		return maxEntries;
+	}
+
+	/**
+	 * Number of names currently in the cache.
+	 * @return Number of cached names.
+	 */
+	public int size() {
+		return dentries.size();
+	}
+
+}
@@ -0,0 +1,74 @@
+package diskUtilities;
+
+import java.util.ArrayList;
+
+import diskExceptions.FullDiskException;
+
+/**
+ * Way in which the entries of a directory are stored and found. An entry takes 
+ * 24 bytes of a directory block: the name of the file (20 bytes) followed by the
+ * index of its i-node, and the last 4 bytes of a directory block link it to the
+ * next one. The kind of a directory is kept in the type byte of its i-node, and 
+ * the root of the directory (the integer stored where the first data block of a
+ * file is) is given to every method.
+ * @author Francisco Diaz
+ *
+ */
+public interface Directory {
+
+	/**
+	 * Writes an empty directory into a block.
+	 * @param d DiskUnit in use.
+	 * @param root Block that becomes the root of the directory.
+	 */
+	void create(DiskUnit d, int root);
+
+	/**
+	 * Finds the entry of a file.
+	 * @param d DiskUnit in use.
+	 * @param root Root of the directory.
+	 * @param name Name of the file, formatted to 20 characters.
+	 * @return ArrayList with the block number of the entry in the first index and
+	 * its byte position in the block in the second, or null if not found.
+	 */
+	ArrayList<Integer> find(DiskUnit d, int root, String name);
+
+	/**
+	 * Adds the entry of a file, which must not be in the directory.
+	 * @param d DiskUnit in use.
+	 * @param root Root of the directory.
+	 * @param name Name of the file, formatted to 20 characters.
+	 * @param iNodeIndex Index of the i-node of the file.
+	 * @throws FullDiskException If the directory needs a new block and there is none.
+	 */
+	void add(DiskUnit d, int root, String name, int iNodeIndex) throws FullDiskException;
+
+	/**
+	 * Removes the entry of a file.
+	 * @param d DiskUnit in use.
+	 * @param root Root of the directory.
+	 * @param name Name of the file, formatted to 20 characters.
+	 * @return Index of the i-node of the file, or -1 if it is not in the directory.
+	 */
+	int remove(DiskUnit d, int root, String name);
+
+	/**
+	 * Gets the blocks of the directory that hold entries, in the order they are listed.
+	 * @param d DiskUnit in use.
+	 * @param root Root of the directory.
+	 * @return Numbers of the blocks.
+	 */
+	int[] getEntryBlocks(DiskUnit d, int root);
+
+	/**
+	 * Finds the files whose names begin with a prefix.
+	 * @param d DiskUnit in use.
+	 * @param root Root of the directory.
+	 * @param prefix Beginning of the names.
+	 * @param iNodes If not null, the index of the i-node of each file found is added
+	 * to it, read from the same entry as its name.
+	 * @return Names of the files, formatted to 20 characters, in the order they are listed.
+	 */
+	ArrayList<String> findByPrefix(DiskUnit d, int root, String prefix, ArrayList<Integer> iNodes);
+
+}
@@ -24,6 +24,10 @@ public class DiskManager {
 	public static ArrayList<String> diskUnitNames = new ArrayList<>(); // Stores in memory the name of the disk units created.
 	public static String nameOfMountedDisk = null;   // Name of the DiskUnit which is mounted.
 	public static DiskUnit currentMountedDisk = null; // DiskUnit instance object of the mounted disk.
+	public static int superBlockFlushPolicy = SuperBlock.WRITE_BACK; // When the control data of the mounted disk is written back.
+	public static int blockCacheSize = 64; // Blocks cached for the mounted disk (0 for no cache). Mapped and RAM disks are not cached.
+	public static int diskFormat = SuperBlock.FREE_SPACE_BITMAP | SuperBlock.EXTENT_FILES | SuperBlock.HASHED_DIRS | SuperBlock.I_NODE_BITMAP
+			| (SuperBlock.I_NODES_V2 << SuperBlock.I_NODE_VERSION_SHIFT); // Format flags of the disk units created.
 
 
 	/**
@@ -41,7 +45,7 @@ public class DiskManager {
 		// Verifying DiskUnit folder exists and add Unit to DiskNames text file
 		DirManager.createDiskDirectory();	
 		try {
-			DiskUnit.createDiskUnit(name, capacity, blockSize);
+			DiskUnit.createDiskUnit(name, capacity, blockSize, diskFormat);
 			DirManager.addUnitToDiskNames(name);
 		} catch (ExistingDiskException e) {
 			throw new ExistingDiskException();
@@ -52,7 +56,7 @@ public class DiskManager {
 		// Set the root directory
 		setRootDirectory(d, blockSize);
 
-		// Initialize the free block structure
+		// Initialize the free block structure (nothing to do for a free-space bitmap)
 		initializeFreeBlocks(d);
 
 		d.shutdown(); // Shutdown the disk
@@ -73,22 +77,59 @@ public class DiskManager {
 	 * @param blockSize Amount of bytes per block.
 	 */
 	private static void setRootDirectory(DiskUnit d, int blockSize) {
-		// Set the root directory
-		VirtualDiskBlock root = new VirtualDiskBlock(blockSize);
+		// Set the root directory, of the kind selected by the format of the disk
 		int rootDataBlock = d.getFirstDataBlock()-1; // index of the root block number
-		DiskUtils.copyIntToBlock(root, blockSize-4, 0);
-		d.write(rootDataBlock, root);
+		int rootType = d.getDirectoryType();
+		d.getDirectory(rootType).create(d, rootDataBlock);
 
-		// Set i-node 0 to reference root
-		int rootINodePos = 1;   // Index of the root directory i-node 
-		// Copy the first i-node block into the Virtual Disk Block
-		VirtualDiskBlock firstBlockRef = DiskUtils.copyBlockToVDB(d, rootINodePos);  
 		// Write in the i-node 0 the reference to the root directory in the data blocks
 		// and set i-node type to directory
-		DiskUtils.copyIntToBlock(firstBlockRef, 0, rootDataBlock);
-		firstBlockRef.setElement(i_NODE_SIZE-1, (byte) 1);
-		// Write into the disk the virtual disk block with updated reference to the root directory data block
-		d.write(rootINodePos, firstBlockRef);
+		iNodesManager.setDataBlockToINode(d, 0, rootDataBlock);
+		iNodesManager.setTypeOfiNode(d, 0, rootType);
+	}
+
+	/**
+	 * Selects the format of the disk units created from now on.
+	 * @param option "bitmap" to keep the free blocks in a free-space bitmap or
+	 * "tree" to keep them in the linked tree of free blocks; "extents" to describe
+	 * the data files by extents, "indexed" to describe them by an index block with
+	 * direct and indirect pointers or "chained" to link their blocks; "hashed" to
+	 * spread the entries of directories in hash buckets, "btree" to keep them sorted
+	 * in a B+-tree or "linear" to keep them in a chain of blocks; "inodes32" for
+	 * aligned 32-byte i-nodes (version 2) or "inodes9" for the original 9-byte ones;
+	 * "inodebitmap" to store a bitmap of the i-nodes in use or "inodelist" to build it
+	 * from the root directory every time the disk is mounted.
+	 */
+	public static void setDiskFormat(String option) {
+		if (option.equals("bitmap"))
+			diskFormat |= SuperBlock.FREE_SPACE_BITMAP;
+		else if (option.equals("tree"))
+			diskFormat &= ~SuperBlock.FREE_SPACE_BITMAP;
+		else if (option.equals("extents"))
+			diskFormat = (diskFormat & ~SuperBlock.INDEXED_FILES) | SuperBlock.EXTENT_FILES;
+		else if (option.equals("indexed"))
+			diskFormat = (diskFormat & ~SuperBlock.EXTENT_FILES) | SuperBlock.INDEXED_FILES;
+		else if (option.equals("chained"))
+			diskFormat &= ~(SuperBlock.EXTENT_FILES | SuperBlock.INDEXED_FILES);
+		else if (option.equals("hashed"))
+			diskFormat = (diskFormat & ~SuperBlock.BTREE_DIRS) | SuperBlock.HASHED_DIRS;
+		else if (option.equals("btree"))
+			diskFormat = (diskFormat & ~SuperBlock.HASHED_DIRS) | SuperBlock.BTREE_DIRS;
+		else if (option.equals("linear"))
+			diskFormat &= ~(SuperBlock.HASHED_DIRS | SuperBlock.BTREE_DIRS);
+		else if (option.equals("inodes32"))
+			diskFormat = (diskFormat & ~(0xFF << SuperBlock.I_NODE_VERSION_SHIFT)) | (SuperBlock.I_NODES_V2 << SuperBlock.I_NODE_VERSION_SHIFT);
+		else if (option.equals("inodes9"))
+			diskFormat &= ~(0xFF << SuperBlock.I_NODE_VERSION_SHIFT);
+		else if (option.equals("inodebitmap"))
+			diskFormat |= SuperBlock.I_NODE_BITMAP;
+		else if (option.equals("inodelist"))
+			diskFormat &= ~SuperBlock.I_NODE_BITMAP;
+		else {
+			System.out.println("Invalid format option: "+option);
+			return;
+		}
+		System.out.println("New disk units will use the "+option+" format.");
 	}
 
 	/**
@@ -113,6 +154,8 @@ public class DiskManager {
 	 * For each disk unit, it displays its name, the number of blocks 
 	 * it has and the size for each block it has. It also shows 
 	 * if the corresponding disk unit is currently mounted or not-mounted.
+	 * The disks that are not mounted are not mounted to show them: only
+	 * the capacity and block size at the start of their block 0 are read.
 	 */
 	public static void showDiskUnits() {
 
@@ -123,17 +166,18 @@ public class DiskManager {
 
 		System.out.println("---------------------------------------------------------------------------");
 		for (String s : DiskManager.diskUnitNames) {
-			DiskUnit d = DiskUnit.mount(s);
-			int capacity = d.getCapacity();
-			int blockSize = d.getBlockSize();
-
-			if (currentMountedDisk != null && nameOfMountedDisk.equals(s))
-				System.out.println("Name : "+s+"  Capacity:  "+capacity+"  BlockSize:  "+blockSize+"  Mounted: YES");
-			else
-				System.out.println("Name : "+s+"  Capacity:  "+capacity+"  BlockSize:  "+blockSize+"  Mounted: NO");
-
-
-			d.shutdown();
+			if (currentMountedDisk != null && nameOfMountedDisk.equals(s)) { // Use the mounted instance, it holds the current control data
+				DiskUnit d = currentMountedDisk;
+				System.out.println("Name : "+s+"  Capacity:  "+d.getCapacity()+"  BlockSize:  "+d.getBlockSize()+"  Mounted: YES");
+				continue;
+			}
+			int[] geometry = DiskUnit.readGeometry(s);   // Only the header, the disk is not mounted
+			if (geometry == null)
+				continue;
+			int capacity = geometry[0];
+			int blockSize = geometry[1];
+
+			System.out.println("Name : "+s+"  Capacity:  "+capacity+"  BlockSize:  "+blockSize+"  Mounted: NO");
 		}
 		System.out.println();
 	}
@@ -147,13 +191,24 @@ public class DiskManager {
 	 * @param name Name of the disk unit to mount.
 	 */
 	public static void mountDisk(String name) {
+		mountDisk(name, DiskUnit.RAF_MOUNT);
+	}
+	/**
+	 * Mounts the specified disk unit, with the given mount mode, and makes it the current working disk unit.
+	 * @param name Name of the disk unit to mount.
+	 * @param mountMode DiskUnit.RAF_MOUNT, DiskUnit.MAPPED_MOUNT or DiskUnit.RAM_MOUNT, which select
+	 * the block device of the disk: its file, its file memory-mapped or a copy in memory.
+	 */
+	public static void mountDisk(String name, int mountMode) {
 
 		if (nameOfMountedDisk != null) {
 			System.out.println("There is already a mounted disk. Unmount DiskUnit "+nameOfMountedDisk+" first.");
 			return;
 		}
 		try {
-			DiskUnit d = DiskUnit.mount(name);
+			DiskUnit d = DiskUnit.mount(name, mountMode, superBlockFlushPolicy);
+			if (mountMode == DiskUnit.RAF_MOUNT)  // the other devices already hold the blocks in memory
+				d.setBlockCache(blockCacheSize);
 			nameOfMountedDisk = name;
 			currentMountedDisk = d;
 			System.out.println(name+" mounted successfully.");
@@ -181,6 +236,38 @@ public class DiskManager {
 		currentMountedDisk = null;
 
 	}
+	/**
+	 * Writes back the control data of the current working disk unit and forces all
+	 * its changes onto the storage device.
+	 */
+	public static void syncDisk() {
+		if (!isDiskMounted()) {
+			System.out.println("Cannot sync. No disk is mounted.");
+			return;
+		}
+		currentMountedDisk.sync();
+		System.out.println(nameOfMountedDisk+" synced successfully.");
+	}
+	/**
+	 * Shows the statistics of the dentry cache and the block cache of the current
+	 * working disk unit.
+	 */
+	public static void showCacheStats() {
+		if (!isDiskMounted()) {
+			System.out.println("Cannot show cache. No disk is mounted.");
+			return;
+		}
+		DentryCache dentryCache = currentMountedDisk.getDentryCache();
+		System.out.println("Names: "+dentryCache.size()+"/"+dentryCache.getMaxEntries()
+				+"  Hits: "+dentryCache.getHits()+"  Misses: "+dentryCache.getMisses());
+		BlockCache cache = currentMountedDisk.getBlockCache();
+		if (cache == null) {
+			System.out.println(nameOfMountedDisk+" has no block cache.");
+			return;
+		}
+		System.out.println("Blocks: "+cache.size()+"/"+cache.getMaxBlocks()+"  Dirty: "+cache.dirtyBlocks()
+				+"  Hits: "+cache.getHits()+"  Misses: "+cache.getMisses()+"  Write-backs: "+cache.getWriteBacks());
+	}
 	/**
 	 * Determines if the is a mounted disk.
 	 * @return Returns true if disk is mounted.
@@ -206,6 +293,23 @@ public class DiskManager {
 			return;
 		}
 	}
+	/**
+	 * Appends the content of an external file to a file of the current directory
+	 * in the current working disk unit.
+	 * @param extFile Name of the file to read
+	 * @param file Name of the file appended to
+	 */
+	public static void appendFile(String extFile, String file) {
+		if (!isDiskMounted()) {
+			System.out.println("Cannot append to file. No disk is mounted.");
+			return;
+		}
+		try {
+			FileLoaderAndManager.appendFile(extFile, file);
+		} catch (FullDiskException e) {
+			return;
+		}
+	}
 	/**
 	 * List the names and sizes of all the files and directories that are part 
 	 * of the current directory. 
@@ -218,6 +322,28 @@ public class DiskManager {
 		}
 		FileLoaderAndManager.listDir();
 	}
+	/**
+	 * Lists the files of the current directory whose names begin with a prefix.
+	 * @param prefix Beginning of the names of the files.
+	 */
+	public static void findFiles(String prefix) {
+		if (!isDiskMounted()) {
+			System.out.println("Cannot find files. No disk is mounted.");
+			return;
+		}
+		FileLoaderAndManager.findFiles(prefix);
+	}
+	/**
+	 * Removes a file from the current directory, freeing its blocks and its i-node.
+	 * @param file Name of file to be removed.
+	 */
+	public static void removeFile(String file) {
+		if (!isDiskMounted()) {
+			System.out.println("Cannot remove file. No disk is mounted.");
+			return;
+		}
+		FileLoaderAndManager.removeFile(file);
+	}
 	/**
 	 * Displays the contents of a file in the current directory.
 	 * @param file Name of file to be displayed.
@@ -229,6 +355,22 @@ public class DiskManager {
 		}
 		FileLoaderAndManager.catFile(file);
 	}
+	/**
+	 * Copies one internal file to another internal file sharing its data blocks.
+	 * @param inputFile Internal file to copy from
+	 * @param file Internal file that shares the content of inputFile
+	 */
+	public static void reflinkFile(String inputFile, String file) {
+		if (!isDiskMounted()) {
+			System.out.println("Cannot copy file. No disk is mounted.");
+			return;
+		}
+		try {
+			FileLoaderAndManager.reflinkFile(inputFile, file);
+		} catch (FullDiskException e) {
+			return;
+		}
+	}
 	/**
 	 * Copies one internal file to another internal file. 
 	 * @param inputFile Internal file to copy from
@@ -1,5 +1,7 @@
 package diskUtilities;
 import java.io.*;
+import java.nio.ByteBuffer;
+import java.util.HashMap;
 
 import diskExceptions.*;
 
@@ -11,30 +13,55 @@ public class DiskUnit {
 	private static final int DEFAULT_BLOCK_SIZE = 256; // default number of bytes per block
 	private static final int I_NODE_SIZE = 9;          // default number of bytes per i-node
 	
+	public static final int RAF_MOUNT = 0;     // blocks are transferred with positioned reads/writes on the file
+	public static final int MAPPED_MOUNT = 1;  // the whole disk file is memory-mapped
+	public static final int RAM_MOUNT = 2;     // the disk is loaded in the heap and written back on sync
+	
 	private int capacity;     	// number of blocks of current disk instance
 	private int blockSize; 	    // size of each block of current disk instance
-	private int firstDataBlock; // index of the first free data block (the root of free block collection)
-	private int nextFreeBlock;  // index representing top 4 bytes position in block firstFLB
-	private int firstFreeINode; // index of first free i-node
-	private int iNodeNum;       // total number of i-nodes in the disk (free + taken)
 	
+	// in-memory copy of the control data in block 0 (firstDataBlock, nextFreeBlock,
+	// firstFreeINode, iNodeNum,...), written back according to its flush policy
+	private SuperBlock superBlock;
+	
+	
+	// the device where all the disk blocks are stored: the file representing
+	// the simulated disk, its memory mapping or a copy of it in the heap
+	private BlockDevice device;
+	// cache of recently used blocks, null if the unit works without cache
+	private BlockCache cache;
+	// in-memory copy of the free-space bitmap, null if the disk keeps its
+	// free blocks in the linked tree of free blocks
+	private FreeSpaceBitmap freeSpaceBitmap;
+	// i-nodes of the disk, kept in memory while it is mounted
+	private INodeTable iNodeTable;
+	// i-nodes in use, stored after the i-node blocks or built at mount
+	private INodeBitmap iNodeBitmap;
+	// how the data blocks of the data files are found from their i-nodes
+	private FileLayout fileLayout;
+	
+	// Reference counts of the data blocks shared by several files
+	private BlockReferences blockReferences = new BlockReferences();
 	
-	// the file representing the simulated  disk, where all the disk blocks
-	// are stored
-	private RandomAccessFile disk;
+	// Names looked up in the directories while the disk is mounted
+	private DentryCache dentryCache = new DentryCache(DentryCache.DEFAULT_MAX_ENTRIES);
+	
+	// Bloom filters of the names of the directories, by i-node of the directory
+	private HashMap<Integer, NameFilter> nameFilters = new HashMap<>();
+	
+	// Ways in which the entries of the directories are stored, by type of i-node
+	private Directory chainedDirectory = new ChainedDirectory();
+	private Directory hashedDirectory = new HashedDirectory();
+	private Directory bTreeDirectory = new BTreeDirectory();
 
 	// the constructor -- PRIVATE
 	/**
-	    @param name is the name of the disk
+	    @param device is the device where the blocks of the disk are stored
 	 **/
-	private DiskUnit(File name) {
-		try {
-			disk = new RandomAccessFile(name, "rw");
-		}
-		catch (IOException e) {
-			System.err.println("Unable to start the disk");
-			System.exit(1);
-		}
+	private DiskUnit(BlockDevice device) {
+		this.device = device;
+		capacity = device.getCapacity();
+		blockSize = device.getBlockSize();
 	}
 
 	/**
@@ -46,29 +73,137 @@ public class DiskUnit {
 	 *    "disk" with the specified name is found.
 	*/
 	public static DiskUnit mount(String name) throws NonExistingDiskException {
+		return mount(name, SuperBlock.WRITE_BACK);
+	}
+	
+	/**
+	 * Turns on an existing disk unit whose name is given, keeping its control
+	 * data in memory with the given flush policy.
+	 * @param name the name of the disk unit to activate
+	 * @param flushPolicy SuperBlock.WRITE_BACK or SuperBlock.WRITE_THROUGH
+	 * @return the corresponding DiskUnit object
+	 * @throws NonExistingDiskException whenever no
+	 *    "disk" with the specified name is found.
+	 */
+	public static DiskUnit mount(String name, int flushPolicy) throws NonExistingDiskException {
+		return mount(name, RAF_MOUNT, flushPolicy);
+	}
+	
+	/**
+	 * Turns on an existing disk unit whose name is given, on the block device 
+	 * selected by the mount mode. With MAPPED_MOUNT the file representing the
+	 * disk is memory-mapped and with RAM_MOUNT it is loaded in the heap, so that
+	 * blocks are read and written by copying memory instead of doing a system
+	 * call per block.
+	 * @param name the name of the disk unit to activate
+	 * @param mountMode RAF_MOUNT, MAPPED_MOUNT or RAM_MOUNT
+	 * @param flushPolicy SuperBlock.WRITE_BACK or SuperBlock.WRITE_THROUGH
+	 * @return the corresponding DiskUnit object
+	 * @throws NonExistingDiskException whenever no
+	 *    "disk" with the specified name is found.
+	 */
+	public static DiskUnit mount(String name, int mountMode, int flushPolicy) throws NonExistingDiskException {
 		File file=new File("DiskUnits", name);
 		   if (!file.exists())
 		       throw new NonExistingDiskException("No disk has name : " + name);
 		  
-		   DiskUnit dUnit = new DiskUnit(file);
-		   	
-		   // get the capacity and the block size of the disk from the file
-		   // representing the disk
-		   try {  // Obtain all relevant information for the control data
-			   dUnit.disk.seek(0);
-			   dUnit.capacity = dUnit.disk.readInt();
-			   dUnit.blockSize = dUnit.disk.readInt();
-			   dUnit.firstDataBlock = dUnit.disk.readInt();
-			   dUnit.nextFreeBlock = dUnit.disk.readInt();
-			   dUnit.firstFreeINode = dUnit.disk.readInt();
-			   dUnit.iNodeNum = dUnit.disk.readInt();
+		   try {  
+			   // get the capacity and the block size of the disk from the file
+			   // representing the disk
+			   int[] header = readHeader(file);
+			   int capacity = header[0];
+			   int blockSize = header[1];
+			   
+			   DiskUnit dUnit = new DiskUnit(openDevice(file, mountMode, capacity, blockSize));
+			   // Obtain all relevant information for the control data
+			   dUnit.superBlock = new SuperBlock(dUnit.device, flushPolicy);
+			   int iNodeVersion = dUnit.superBlock.getINodeVersion();
+			   int iNodeNum = dUnit.getiNodeNum();
+			   dUnit.iNodeTable = new INodeTable(dUnit, iNodeNum, iNodeVersion);
+			   int numOfINodeBlocks = numOfINodeBlocks(iNodeNum, blockSize, INodeTable.getINodeSize(iNodeVersion));
+			   int numOfINodeBitmapBlocks = 0;
+			   if (dUnit.superBlock.hasFormatFlag(SuperBlock.I_NODE_BITMAP))
+				   numOfINodeBitmapBlocks = numOfINodeBitmapBlocks(iNodeNum, blockSize);
+			   dUnit.iNodeBitmap = new INodeBitmap(dUnit, iNodeNum, numOfINodeBlocks + 1, numOfINodeBitmapBlocks);
+			   if (dUnit.superBlock.hasFormatFlag(SuperBlock.FREE_SPACE_BITMAP))
+				   dUnit.freeSpaceBitmap = new FreeSpaceBitmap(dUnit, 
+						   numOfINodeBlocks + numOfINodeBitmapBlocks + 1, numOfBitmapBlocks(capacity, blockSize));
+			   if (dUnit.superBlock.hasFormatFlag(SuperBlock.INDEXED_FILES))
+				   dUnit.fileLayout = new IndexedFileLayout(blockSize);
+			   else if (dUnit.superBlock.hasFormatFlag(SuperBlock.EXTENT_FILES))
+				   dUnit.fileLayout = new ExtentFileLayout(blockSize);
+			   else
+				   dUnit.fileLayout = new ChainedFileLayout(blockSize);
+			   if (dUnit.superBlock.hasFormatFlag(SuperBlock.SHARED_BLOCKS))
+				   BlockManager.rebuildReferences(dUnit);
+			   if (!dUnit.iNodeBitmap.isStored())
+				   iNodesManager.rebuildINodeBitmap(dUnit);
+			   FileLoaderAndManager.buildNameFilter(dUnit, 0);   // the root directory
+			   return dUnit;
 			   
 		   } catch (IOException e) {
-			   e.printStackTrace();
+			   System.err.println("Unable to start the disk");
+			   System.exit(1);
 		   }
-		   	
-		   return dUnit;     	
+		   return null;
 	}
+	
+	/**
+	 * Opens the block device that corresponds to a mount mode. 
+	 * @param file File representing the disk.
+	 * @param mountMode RAF_MOUNT, MAPPED_MOUNT or RAM_MOUNT
+	 * @param capacity Number of blocks of the disk.
+	 * @param blockSize Bytes per block of the disk.
+	 * @return The block device.
+	 * @throws IOException If the file could not be opened.
+	 */
+	private static BlockDevice openDevice(File file, int mountMode, int capacity, int blockSize) throws IOException {
+		if (mountMode == RAM_MOUNT)
+			return new RAMBlockDevice(file, capacity, blockSize);
+		if (mountMode == MAPPED_MOUNT) {
+			try {
+				return new MappedBlockDevice(file, capacity, blockSize);
+			} catch (IllegalArgumentException e) {
+				System.out.println(e.getMessage()+" Using positioned reads/writes.");
+			}
+		}
+		return new RAFBlockDevice(file, capacity, blockSize);
+	}
+	/**
+	 * Reads the capacity and the block size of a disk unit from the first two
+	 * integers of block 0, without mounting it.
+	 * @param name Name of the disk unit.
+	 * @return Capacity (number of blocks) and block size of the disk, in that order.
+	 * @throws NonExistingDiskException whenever no
+	 *    "disk" with the specified name is found.
+	 */
+	public static int[] readGeometry(String name) throws NonExistingDiskException {
+		File file = new File("DiskUnits", name);
+		if (!file.exists())
+			throw new NonExistingDiskException("No disk has name : " + name);
+		try {
+			return readHeader(file);
+		} catch (IOException e) {
+			e.printStackTrace();
+			return null;
+		}
+	}
+
+	/**
+	 * Reads the capacity and the block size stored at the start of the file of a disk unit.
+	 * @param file File representing the disk.
+	 * @return Capacity and block size of the disk, in that order.
+	 * @throws IOException If the file can not be read.
+	 */
+	private static int[] readHeader(File file) throws IOException {
+		RandomAccessFile header = new RandomAccessFile(file, "r");
+		try {
+			return new int[] {header.readInt(), header.readInt()};
+		} finally {
+			header.close();
+		}
+	}
+
 	/**
 	 * Creates a new disk unit with the given name. The disk is formatted
 	 * as having default capacity (number of blocks), each of default
@@ -97,6 +232,26 @@ public class DiskUnit {
 	*/
 	public static void createDiskUnit(String name, int capacity, int blockSize) 
 			throws ExistingDiskException, InvalidParameterException {
+		createDiskUnit(name, capacity, blockSize, 0);
+	}
+	
+	/**
+	 * Creates a new disk unit with the given name, capacity and block size, whose
+	 * on-disk structures are selected by the format flags written in block 0.
+	 * With SuperBlock.FREE_SPACE_BITMAP the free blocks are kept in a bitmap stored
+	 * after the i-node blocks, and with SuperBlock.I_NODE_BITMAP the i-nodes in use
+	 * are kept in a bitmap stored between the two. The created disk is left as in off mode.
+	 * @param name the name of the file that is to represent the disk.
+	 * @param capacity number of blocks in the new disk
+	 * @param blockSize size per block in the new disk
+	 * @param formatFlags format flags of the new disk (0 for the original format)
+	 * @throws ExistingDiskException whenever the name attempted is
+	 * already in use.
+	 * @throws InvalidParameterException whenever the values for capacity
+	 *  or blockSize are not valid according to the specifications
+	 */
+	public static void createDiskUnit(String name, int capacity, int blockSize, int formatFlags) 
+			throws ExistingDiskException, InvalidParameterException {
 		File file=new File("DiskUnits",name);
 		if (file.exists())
 			throw new ExistingDiskException("Disk name is already used: " + name);
@@ -117,7 +272,7 @@ public class DiskUnit {
 			System.exit(1);
 		}
 
-		reserveDiskSpace(disk, capacity, blockSize);
+		reserveDiskSpace(disk, capacity, blockSize, formatFlags);
 
 		// after creation, just leave it in shutdown mode - just
 		// close the corresponding file
@@ -133,14 +288,13 @@ public class DiskUnit {
 	 * @param disk
 	 * @param capacity
 	 * @param blockSize
+	 * @param formatFlags
 	 */
-	private static void reserveDiskSpace(RandomAccessFile disk, int capacity, int blockSize)
+	private static void reserveDiskSpace(RandomAccessFile disk, int capacity, int blockSize, int formatFlags)
 	{
-		try {
-			disk.setLength(blockSize * capacity);
-		} catch (IOException e) {
-			e.printStackTrace();
-		}
+		// the file is not extended to the size of the disk: it only holds the blocks
+		// written so far and the blocks past its end read as zeros (a sparse disk)
+		
 		// write disk parameters (number of blocks, bytes per block) in
 		// block 0 of disk space
 		try {
@@ -149,16 +303,32 @@ public class DiskUnit {
 			disk.writeInt(blockSize); // Writes into disk the blockSize
 			
 			int iNodeNum = (int) (blockSize * capacity * 0.01) / 9;      // number of i-nodes in disk instance
-			int numOfINodeBlocks =  (int) Math.max(1, Math.ceil(I_NODE_SIZE * ( (double)iNodeNum / blockSize)));  // index of the block reserved for i-nodes
+			int iNodeSize = INodeTable.getINodeSize(SuperBlock.getINodeVersion(formatFlags));
+			int numOfINodeBlocks = numOfINodeBlocks(iNodeNum, blockSize, iNodeSize);  // index of the block reserved for i-nodes
+			int numOfINodeBitmapBlocks = 0;    // blocks of the i-node bitmap, after the i-node blocks
+			if ((formatFlags & SuperBlock.I_NODE_BITMAP) != 0)
+				numOfINodeBitmapBlocks = numOfINodeBitmapBlocks(iNodeNum, blockSize);
+			int numOfBitmapBlocks = 0;         // blocks of the free-space bitmap, after the i-node bitmap
+			if ((formatFlags & SuperBlock.FREE_SPACE_BITMAP) != 0)
+				numOfBitmapBlocks = numOfBitmapBlocks(capacity, blockSize);
+			int firstDataBlock = numOfINodeBlocks + numOfINodeBitmapBlocks + numOfBitmapBlocks + 2;
 			int nextFreeBlock = 0;             //TODO: Finish this implementation
 			int firstFreeINode = 1;    // index of first free i-node,adds 9 because root takes the first i-node.
 			
-			disk.writeInt(numOfINodeBlocks + 2); // Writes into disk the index of the first data block (the root of free block structure)
+			disk.writeInt(firstDataBlock);       // Writes into disk the index of the first data block (the root of free block structure)
 			disk.writeInt(nextFreeBlock);        // Writes into disk the index representing top 4 bytes position in block firstFLB
 			disk.writeInt(firstFreeINode);       // Writes into disk the byte index of first free i-node
 			disk.writeInt(iNodeNum);             // Writes into disk the total number of i-nodes in the disk (free + taken)
+			disk.writeInt(formatFlags);          // Writes into disk the format flags
 			
-			reserveINodesSpace(disk, capacity, blockSize, iNodeNum, numOfINodeBlocks); // Reserve i-node space
+			if (iNodeSize == I_NODE_SIZE)
+				reserveINodesSpace(disk, capacity, blockSize, iNodeNum, numOfINodeBlocks); // Reserve i-node space
+			else if (numOfINodeBitmapBlocks == 0)   // with an i-node bitmap the free i-nodes are not linked, and are all zeros
+				reserveAlignedINodesSpace(disk, blockSize, iNodeNum, numOfINodeBlocks, iNodeSize);
+			if (numOfINodeBitmapBlocks > 0)  // only i-node 0, the root directory, is in use
+				reserveBitmapSpace(disk, blockSize, numOfINodeBlocks + 1, 1);
+			if (numOfBitmapBlocks > 0)  // block 0, the i-node blocks, the bitmaps and the root directory are in use
+				reserveBitmapSpace(disk, blockSize, numOfINodeBlocks + numOfINodeBitmapBlocks + 1, firstDataBlock);
 		
 			
 		} catch (IOException e) {
@@ -167,7 +337,8 @@ public class DiskUnit {
 	}
 	
 	/**
-	  * Reserves space for the i-nodes in the disk.
+	  * Reserves space for the i-nodes in the disk. The i-node blocks are prepared 
+	  * in memory and written into the disk with a single write.
 	  * @param disk RandomAccessFile in which to write.
 	  *	@param capacity Amount of blocks in disk unit
 	  * @param blockSize Bytes per block
@@ -177,31 +348,94 @@ public class DiskUnit {
 		int nodesPerBlock = blockSize / 9;
 		int firstINode = 0;
 		int iNodeCounter = 0;              // Counts the amount of i-nodes created   
+		ByteBuffer iNodeBlocks = ByteBuffer.allocate(numOfINodeBlocks * blockSize);  // Content of the i-node blocks
 		try {
+			fill:
 			for (int i=firstINode; i < numOfINodeBlocks; i++) { // Iterates through the disk blocks with i-nodes.
-				disk.seek((i*blockSize)+blockSize);
+				iNodeBlocks.position(i*blockSize);
 				
 				for (int j=0; j < nodesPerBlock; j++) {  // Creates the amount of i-nodes that fit inside a block.
 					iNodeCounter++;
-					if (iNodeCounter == numOfINodes) {			
-						disk.writeInt(0);			  // Number of first file block or 0 because there aren't more i-nodes. (First block)
-						disk.writeInt(0);             // Number of bytes the file has. (Size)
-						disk.writeBoolean(false);	  // Indicates if i-node corresponds to a file or directory. Is 0 if it is a data file. (Type)
-						return;
+					if (iNodeCounter == numOfINodes) {	// The last i-node: first block, size and type are 0
+						break fill;
 					} 
 					
-					disk.writeInt((i*3)+j+1);           // (i*3)+j+1 points to the iNode index of the next i-node in the same block. Ej. 0,1,2,3,...
-					disk.writeInt(0);                 // Number of bytes the file has. (Size)
-					disk.writeBoolean(false);	      // Indicates if i-node corresponds to a file or directory. Is 0 if it is a data file. (Type)
+					iNodeBlocks.putInt((i*3)+j+1);    // (i*3)+j+1 points to the iNode index of the next i-node in the same block. Ej. 0,1,2,3,...
+					iNodeBlocks.putInt(0);            // Number of bytes the file has. (Size)
+					iNodeBlocks.put((byte) 0);        // Indicates if i-node corresponds to a file or directory. Is 0 if it is a data file. (Type)
 					
 				}	
 			}	
+			disk.seek(blockSize);
+			disk.write(iNodeBlocks.array());
 		} catch (IOException e) {
 				// TODO Auto-generated catch block
 				e.printStackTrace();
 			}
 			
 	}
+	/**
+	 * Reserves space for aligned i-nodes (version 2), every i-node linked to the
+	 * next one in the list of free i-nodes. The other fields of the i-nodes are 0.
+	 * @param disk RandomAccessFile in which to write.
+	 * @param blockSize Bytes per block
+	 * @param numOfINodes Number of i-nodes of the disk.
+	 * @param numOfINodeBlocks Number of blocks reserved for the i-nodes.
+	 * @param iNodeSize Bytes per i-node.
+	 */
+	private static void reserveAlignedINodesSpace(RandomAccessFile disk, int blockSize, int numOfINodes, int numOfINodeBlocks, int iNodeSize) throws IOException {
+		ByteBuffer iNodeBlocks = ByteBuffer.allocate(numOfINodeBlocks * blockSize);  // Content of the i-node blocks
+		for (int i=0; i < numOfINodes-1; i++)
+			iNodeBlocks.putInt(i*iNodeSize, i+1);   // The last i-node is not linked
+		disk.seek(blockSize);
+		disk.write(iNodeBlocks.array());
+	}
+	/**
+	 * Writes an initial bitmap, free-space or i-node, in which the first bits are set.
+	 * @param disk RandomAccessFile in which to write.
+	 * @param blockSize Bytes per block
+	 * @param firstBitmapBlock Number of the first block of the bitmap.
+	 * @param bitsInUse Number of bits set: the first data block, or the first free i-node.
+	 */
+	private static void reserveBitmapSpace(RandomAccessFile disk, int blockSize, int firstBitmapBlock, int bitsInUse) throws IOException {
+		byte[] bits = new byte[(bitsInUse + 7) / 8];
+		for (int bn=0; bn < bitsInUse; bn++)
+			bits[bn / 8] |= 1 << (bn % 8);
+		disk.seek((long) firstBitmapBlock * blockSize);
+		disk.write(bits);
+	}
+	
+	/**
+	 * Number of blocks reserved for the i-nodes.
+	 * @param iNodeNum Number of i-nodes of the disk.
+	 * @param blockSize Bytes per block.
+	 * @param iNodeSize Bytes per i-node.
+	 * @return Number of i-node blocks.
+	 */
+	private static int numOfINodeBlocks(int iNodeNum, int blockSize, int iNodeSize) {
+		return (int) Math.max(1, Math.ceil(iNodeSize * ( (double)iNodeNum / blockSize)));
+	}
+	
+	/**
+	 * Number of blocks of the i-node bitmap, one bit per i-node.
+	 * @param iNodeNum Number of i-nodes of the disk.
+	 * @param blockSize Bytes per block.
+	 * @return Number of bitmap blocks.
+	 */
+	private static int numOfINodeBitmapBlocks(int iNodeNum, int blockSize) {
+		return (iNodeNum + 8*blockSize - 1) / (8*blockSize);
+	}
+	
+	/**
+	 * Number of blocks of the free-space bitmap, one bit per disk block.
+	 * @param capacity Number of blocks of the disk.
+	 * @param blockSize Bytes per block.
+	 * @return Number of bitmap blocks.
+	 */
+	private static int numOfBitmapBlocks(int capacity, int blockSize) {
+		return (capacity + 8*blockSize - 1) / (8*blockSize);
+	}
+	
 	/**
 	 * Verifies if number is power of two.
 	 * @param n Integer to verify.
@@ -213,18 +447,24 @@ public class DiskUnit {
 
 	
 	
+	/**
+	 * Writes the content of a virtual disk block into the disk block blockNum. 
+	 * If the unit has a block cache the block is kept there as dirty and written
+	 * back later; otherwise it is transferred right away to the block device.
+	 * @param blockNum Number of the disk block to write into.
+	 * @param b Virtual disk block with the content to write.
+	 */
 	public void write(int blockNum, VirtualDiskBlock b) throws InvalidBlockNumberException, InvalidBlockException {
 		
 		try {
-			if (blockNum < 1 || blockNum >= capacity)
-				throw new InvalidBlockNumberException("The block number "+blockNum+" is invalid.");
+			validateRun(blockNum, 1);
 			if (b == null || b.getCapacity() != blockSize)
 				throw new InvalidBlockException("Invalid block instance.");
 			
-			int bytePos = blockNum * blockSize;
-			disk.seek(bytePos);
-			for (int i=0; i < b.getCapacity(); i++)
-				disk.write(b.getElement(i));
+			if (cache != null)
+				cache.write(blockNum, b);
+			else
+				device.write(blockNum, b);
 			
 		} catch (InvalidBlockNumberException e) {
 			e.printStackTrace();
@@ -236,7 +476,16 @@ public class DiskUnit {
 		
 	}
 
-	
+	/**
+	 * Reads the disk block blockNum into a virtual disk block. The block is served
+	 * from the block cache when present there; otherwise it is transferred from 
+	 * the block device.
+	 * Block transfers of a unit are not serialized: one thread may read some blocks
+	 * while another one writes others, as the copy of a file does. Only the block 
+	 * cache is locked while it is used, and the device transfers run outside it.
+	 * @param blockNum Number of the disk block to read.
+	 * @param b Virtual disk block in which the content is copied.
+	 */
 	public void read(int blockNum, VirtualDiskBlock b) throws InvalidBlockNumberException, InvalidBlockException {
 		
 		try {
@@ -245,10 +494,10 @@ public class DiskUnit {
 			if (b == null || b.getCapacity() != blockSize)
 				throw new InvalidBlockException("Invalid block instance.");
 			
-			int bytePos = blockNum * blockSize;
-			disk.seek(bytePos);
-			for (int i=0; i < b.getCapacity(); i++)
-				b.setElement(i, disk.readByte());
+			if (cache != null && blockNum != 0)  // block 0 is managed through the superblock
+				cache.read(blockNum, b);
+			else
+				device.read(blockNum, b);
 			
 		} catch (InvalidBlockNumberException e) {
 			e.printStackTrace();
@@ -258,28 +507,244 @@ public class DiskUnit {
 			e.printStackTrace();
 		} 	
 	}
-
 	
-	public int getCapacity() {
+	/**
+	 * Writes a run of consecutive disk blocks, starting at firstBlockNum, with a 
+	 * single transfer to the block device. blocks[i] is written into disk block 
+	 * firstBlockNum+i.
+	 * @param firstBlockNum Number of the first disk block of the run.
+	 * @param blocks Virtual disk blocks to write.
+	 */
+	public void writeBlocks(int firstBlockNum, VirtualDiskBlock[] blocks) throws InvalidBlockNumberException, InvalidBlockException {
+		
 		try {
-			disk.seek(0);
-			return disk.readInt();
+			validateRun(firstBlockNum, blocks.length);
+			validateBlocks(blocks);
+			if (cache != null)   // the run is written through, cached copies take its content
+				cache.update(firstBlockNum, blocks);
+			device.writeBlocks(firstBlockNum, blocks);
+			
+		} catch (InvalidBlockNumberException e) {
+			e.printStackTrace();
+		} catch (InvalidBlockException e) {
+			e.printStackTrace();
+		} catch (IOException e) {
+			e.printStackTrace();
+		} 	
+	}
+	
+	/**
+	 * Reads a run of consecutive disk blocks, starting at firstBlockNum, with a 
+	 * single transfer from the block device. Disk block firstBlockNum+i is copied 
+	 * into blocks[i].
+	 * @param firstBlockNum Number of the first disk block of the run.
+	 * @param blocks Virtual disk blocks in which the content is copied.
+	 */
+	public void readBlocks(int firstBlockNum, VirtualDiskBlock[] blocks) throws InvalidBlockNumberException, InvalidBlockException {
+		
+		try {
+			validateRun(firstBlockNum, blocks.length);
+			validateBlocks(blocks);
+			device.readBlocks(firstBlockNum, blocks);
+			if (cache != null)   // cached copies may be newer than the device's
+				cache.overlay(firstBlockNum, blocks);
+			
+		} catch (InvalidBlockNumberException e) {
+			e.printStackTrace();
+		} catch (InvalidBlockException e) {
+			e.printStackTrace();
+		} catch (IOException e) {
+			e.printStackTrace();
+		} 	
+	}
+	
+	/**
+	 * Discards a run of consecutive disk blocks whose content is no longer needed,
+	 * instead of writing zeros into them. The device releases their space when it
+	 * can; they may keep their old content, so they are written before being read again.
+	 * @param firstBlockNum Number of the first disk block of the run.
+	 * @param numOfBlocks Number of blocks of the run.
+	 */
+	public void discard(int firstBlockNum, int numOfBlocks) throws InvalidBlockNumberException {
+		
+		try {
+			validateRun(firstBlockNum, numOfBlocks);
+			if (cache != null)
+				cache.discard(firstBlockNum, numOfBlocks);
+			device.discard(firstBlockNum, numOfBlocks);
+			
+		} catch (InvalidBlockNumberException e) {
+			e.printStackTrace();
+		} catch (IOException e) {
+			e.printStackTrace();
+		} 	
+	}
+	
+	/**
+	 * Sets a block cache of the given number of blocks between the unit and its device.
+	 * A size of 0 removes the cache, writing back its dirty blocks first. It is only
+	 * changed when the disk is mounted, before any block is transferred.
+	 * @param numOfBlocks Maximum number of blocks kept in the cache.
+	 */
+	public void setBlockCache(int numOfBlocks) {
+		try {
+			if (cache != null)
+				cache.flush();
 		} catch (IOException e) {
 			e.printStackTrace();
 		}
-		return 0;
-
+		cache = (numOfBlocks > 0) ? new BlockCache(device, numOfBlocks) : null;
 	}
-
 	
-	public int getBlockSize() {
+	/**
+	 * Returns the block cache of the unit.
+	 * @return The BlockCache, or null if the unit works without cache.
+	 */
+	public BlockCache getBlockCache() {
+		return cache;
+	}
+	
+	/**
+	 * Returns the device where the blocks of the unit are stored.
+	 * @return The BlockDevice of the unit.
+	 */
+	public BlockDevice getDevice() {
+		return device;
+	}
+	
+	/**
+	 * Returns the in-memory copy of the free-space bitmap of the unit.
+	 * @return The FreeSpaceBitmap, or null if the disk keeps its free blocks in the linked tree.
+	 */
+	public FreeSpaceBitmap getFreeSpaceBitmap() {
+		return freeSpaceBitmap;
+	}
+	
+	/**
+	 * Returns the layout of the data files of the unit.
+	 * @return The FileLayout selected by the format flags of the disk.
+	 */
+	public FileLayout getFileLayout() {
+		return fileLayout;
+	}
+	
+	/**
+	 * Gets the Directory that stores the entries of a kind of directory.
+	 * @param type Type of the i-node of the directory.
+	 * @return HashedDirectory for iNodesManager.HASHED_DIRECTORY, BTreeDirectory for 
+	 * iNodesManager.BTREE_DIRECTORY, ChainedDirectory otherwise.
+	 */
+	public Directory getDirectory(int type) {
+		if (type == iNodesManager.HASHED_DIRECTORY)
+			return hashedDirectory;
+		if (type == iNodesManager.BTREE_DIRECTORY)
+			return bTreeDirectory;
+		return chainedDirectory;
+	}
+	
+	/**
+	 * Type of i-node of the directories created in this disk.
+	 * @return iNodesManager.HASHED_DIRECTORY, iNodesManager.BTREE_DIRECTORY or iNodesManager.CHAINED_DIRECTORY.
+	 */
+	public int getDirectoryType() {
+		if (superBlock.hasFormatFlag(SuperBlock.HASHED_DIRS))
+			return iNodesManager.HASHED_DIRECTORY;
+		if (superBlock.hasFormatFlag(SuperBlock.BTREE_DIRS))
+			return iNodesManager.BTREE_DIRECTORY;
+		return iNodesManager.CHAINED_DIRECTORY;
+	}
+	
+	/**
+	 * Reference counts of the data blocks shared by more than one file.
+	 */
+	public BlockReferences getBlockReferences() {
+		return blockReferences;
+	}
+	
+	public INodeTable getINodeTable() {
+		return iNodeTable;
+	}
+	
+	public INodeBitmap getINodeBitmap() {
+		return iNodeBitmap;
+	}
+	
+	public DentryCache getDentryCache() {
+		return dentryCache;
+	}
+	
+	/**
+	 * Gets the Bloom filter of the names of a directory.
+	 * @param dirINode Index of the i-node of the directory.
+	 * @return The filter, or null if the directory has none.
+	 */
+	public NameFilter getNameFilter(int dirINode) {
+		return nameFilters.get(dirINode);
+	}
+	
+	/**
+	 * Sets the Bloom filter of the names of a directory.
+	 * @param dirINode Index of the i-node of the directory.
+	 * @param filter The filter.
+	 */
+	public void setNameFilter(int dirINode, NameFilter filter) {
+		nameFilters.put(dirINode, filter);
+	}
+	
+	/**
+	 * Sets or clears a format flag of the disk.
+	 * @param flag One of the format flags of SuperBlock.
+	 * @param value True to set the flag, false to clear it.
+	 */
+	public void setFormatFlag(int flag, boolean value) {
 		try {
-			disk.seek(4);
-			return disk.readInt();
+			superBlock.setFormatFlag(flag, value);
 		} catch (IOException e) {
 			e.printStackTrace();
 		}
-		return 0;
+	}
+	
+	/**
+	 * Gets the format flags of the disk, which select its on-disk structures.
+	 * @return Format flags written in block 0 (0 for the original format).
+	 */
+	public int getFormatFlags() {
+		return superBlock.getFormatFlags();
+	}
+	
+	/**
+	 * Verifies that a run of consecutive blocks may be written, read as a run or
+	 * discarded: it lies between block 1 and the last block of the disk. Block 0 is
+	 * left out, since its content is kept by the superblock.
+	 * @param firstBlockNum Number of the first block of the run.
+	 * @param numOfBlocks Number of blocks of the run.
+	 */
+	private void validateRun(int firstBlockNum, int numOfBlocks) throws InvalidBlockNumberException {
+		if (numOfBlocks == 1 && (firstBlockNum < 1 || firstBlockNum >= capacity))
+			throw new InvalidBlockNumberException("The block number "+firstBlockNum+" is invalid.");
+		if (firstBlockNum < 1 || numOfBlocks < 0 || firstBlockNum + numOfBlocks > capacity)
+			throw new InvalidBlockNumberException("The block run "+firstBlockNum+" - "
+					+(firstBlockNum+numOfBlocks-1)+" is invalid.");
+	}
+	
+	/**
+	 * Verifies that every virtual disk block has the size of the disk blocks.
+	 * @param blocks Virtual disk blocks to verify.
+	 */
+	private void validateBlocks(VirtualDiskBlock[] blocks) throws InvalidBlockException {
+		for (VirtualDiskBlock block : blocks)
+			if (block == null || block.getCapacity() != blockSize)
+				throw new InvalidBlockException("Invalid block instance.");
+	}
+
+	
+	public int getCapacity() {
+		return capacity;
+	}
+
+	
+	public int getBlockSize() {
+		return blockSize;
 	}
 	/**
 	 * Gets the index of the first block (the root) in the collection of 
@@ -287,13 +752,7 @@ public class DiskUnit {
 	 * @return Integer referring to firstFLB
 	 */
 	public int getFirstDataBlock() {
-		try {
-			disk.seek(8);
-			return disk.readInt();
-		} catch (IOException e) {
-			e.printStackTrace();
-		}
-		return -1;
+		return superBlock.getFirstDataBlock();
 	}
 	/**
 	 * Sets the index of the first block (the root) in the collection of 
@@ -302,8 +761,7 @@ public class DiskUnit {
 	 */
 	public void setFirstDataBlock(int firstDataBlock) {
 		try {
-			disk.seek(8);
-			disk.writeInt(firstDataBlock);
+			superBlock.setFirstDataBlock(firstDataBlock);
 		} catch (IOException e) {
 			e.printStackTrace();
 		}
@@ -314,13 +772,7 @@ public class DiskUnit {
 	 * @return Integer referring to the flIndex
 	 */
 	public int getNextFreeBlock() {
-		try {
-			disk.seek(12);
-			return disk.readInt();
-		} catch (IOException e) {
-			e.printStackTrace();
-		}
-		return -1;
+		return superBlock.getNextFreeBlock();
 	}
 	/**
 	 * Sets the index representing the top 4-bytes position in 
@@ -329,24 +781,49 @@ public class DiskUnit {
 	 */
 	public void setNextFreeBlock(int nextFreeBlock) {
 		try {
-			disk.seek(12);
-			disk.writeInt(nextFreeBlock);
+			superBlock.setNextFreeBlock(nextFreeBlock);
 		} catch (IOException e) {
 			e.printStackTrace();
 		}
 	}
 	/**
-	 * Gets index of the first free i-node in the list of free i-nodes.
-	 * @return Returns index of the first free i-node in the list of free i-nodes.
+	 * Sets both the root of the collection of free data blocks (firstFLB) and
+	 * the index of its top free block number (flIndex), with one header update.
+	 * @param firstDataBlock New Index of the first block in the free blocks
+	 * @param nextFreeBlock New value of flIndex
 	 */
-	public int getFirstFreeINode() {
+	public void setFreeBlockRoot(int firstDataBlock, int nextFreeBlock) {
+		setFreeBlockRoot(firstDataBlock, nextFreeBlock, getHighWaterMark());
+	}
+	/**
+	 * Sets the root of the collection of free data blocks (firstFLB), the index
+	 * of its top free block number (flIndex) and the high-water mark, with one header update.
+	 * @param firstDataBlock New Index of the first block in the free blocks
+	 * @param nextFreeBlock New value of flIndex
+	 * @param highWaterMark New first block that was never used
+	 */
+	public void setFreeBlockRoot(int firstDataBlock, int nextFreeBlock, int highWaterMark) {
 		try {
-			disk.seek(16);
-			return disk.readInt();
+			superBlock.setFreeBlockRoot(firstDataBlock, nextFreeBlock, highWaterMark);
 		} catch (IOException e) {
 			e.printStackTrace();
 		}
-		return -1;
+	}
+	/**
+	 * Gets the high-water mark: the blocks from this one to the last one of the disk
+	 * were never used and are free, without being part of the free block collection.
+	 * @return The first block that was never used, or 0 if every free block
+	 * is in the free block collection.
+	 */
+	public int getHighWaterMark() {
+		return superBlock.getHighWaterMark();
+	}
+	/**
+	 * Gets index of the first free i-node in the list of free i-nodes.
+	 * @return Returns index of the first free i-node in the list of free i-nodes.
+	 */
+	public int getFirstFreeINode() {
+		return superBlock.getFirstFreeINode();
 	}
 	/**
 	 * Sets index of the first free i-node in the list of free i-nodes.
@@ -354,8 +831,7 @@ public class DiskUnit {
 	 */
 	public void setFirstFreeINode(int firstFreeINode) {
 		try {
-			disk.seek(16);
-			disk.writeInt(firstFreeINode);
+			superBlock.setFirstFreeINode(firstFreeINode);
 		} catch (IOException e) {
 			e.printStackTrace();
 		}
@@ -365,33 +841,59 @@ public class DiskUnit {
 	 * @return Returns number of total i-nodes that the disk has.
 	 */
 	public int getiNodeNum() {
+		return superBlock.getiNodeNum();
+	}
+	
+	/**
+	 * Sets when the control data kept in memory is written into block 0.
+	 * @param flushPolicy SuperBlock.WRITE_BACK or SuperBlock.WRITE_THROUGH
+	 */
+	public void setFlushPolicy(int flushPolicy) {
+		superBlock.setFlushPolicy(flushPolicy);
+		if (flushPolicy == SuperBlock.WRITE_THROUGH)
+			sync();
+	}
+	
+	/**
+	 * Writes back the changed i-node blocks, the changed blocks of the i-node and free-space bitmaps, the dirty blocks of
+	 * the block cache and the control data kept in memory, if it was modified, and forces every change made to the disk onto the storage device.
+	 */
+	public void sync() {
+		iNodeTable.flush();
+		iNodeBitmap.flush();
+		if (freeSpaceBitmap != null)
+			freeSpaceBitmap.flush();
 		try {
-			disk.seek(20);
-			return disk.readInt();
+			if (cache != null)
+				cache.flush();
+			superBlock.flush();
+			device.sync();
 		} catch (IOException e) {
 			e.printStackTrace();
 		}
-		return -1;
 	}
 
 	
+	/**
+	 * Sets every block of the disk, except block 0, to zero. The device does it
+	 * without reading the blocks: a disk stored in a file is cut after block 0.
+	 */
 	public void lowLevelFormat() {
-		
-		VirtualDiskBlock vdb = new VirtualDiskBlock(blockSize);
-		for (int i=0; i<vdb.getCapacity(); i++) {
-			vdb.setElement(i, (byte) 0);
-		}
-		for (int bn=1; bn < capacity; bn++) {
-			write(bn, vdb);
+		try {
+			if (cache != null)
+				cache.discard(1, capacity-1);
+			device.zero(1, capacity-1);
+		} catch (IOException e) {
+			e.printStackTrace();
 		}
-		
 	}
 
 	
-	/** Simulates shutting-off the disk. Just closes the corresponding RAF. **/
+	/** Simulates shutting-off the disk. Writes back the control data and closes the corresponding device. **/
 	public void shutdown() {
+		sync();
 		try {
-			disk.close();
+			device.close();
 		} catch (IOException e) {
 			e.printStackTrace();
 		}
@@ -2,8 +2,8 @@ package diskUtilities;
 
 import java.io.File;
 import java.io.IOException;
-import java.io.RandomAccessFile;
-import java.util.ArrayList;
+import java.io.OutputStream;
+import java.util.Arrays;
 
 /**
  * Some utility methods to copy/get int values, byte values and char values
@@ -14,6 +14,8 @@ import java.util.ArrayList;
 public class DiskUtils {
 	// Defualt Size of an integer in bytes
 	public static final int INTSIZE = 4; 
+	// Bytes of a file read from the disk at a time when it is written into a stream
+	private static final int RUN_BUFFER_SIZE = 64 * 1024;
 	
 	/**
 	 * Copy an integer value into four consecutive bytes in a block.
@@ -119,85 +121,44 @@ public class DiskUtils {
 	}
 	
 	/**
-	 * Reads the contents of an external file. It separates the content into VirtualDiskBlocks, 
-	 * while leaving 4 bytes for the integer which makes reference to the next data block.
-	 * @param file File to be read.
-	 * @return Returns ArrayList of VirtualDiskBlocks with the contents of the file.
-	 */
-	public static ArrayList<VirtualDiskBlock> setExtFileContentToVDBs(String file, int blockSize) {
-		
-		try {
-			RandomAccessFile fileToRead = new RandomAccessFile(file, "rw");
-			ArrayList<VirtualDiskBlock> vdbArray = new ArrayList<>();
-			double fileToReadSize = (double) fileToRead.length();  // Size of the fileToRead in bytes.
-			int usableBytes = blockSize - 4;  // Amount of bytes for the fileToRead content (-4 to reserve space for integer)
-			int numOfBlocks =  (int) Math.ceil(fileToReadSize / usableBytes); // Amount of blocks needed to copy fileToRead.		
-			int byteCounter = 0; // Counts the bytes read
-			
-			// Store the contents of the random access file into VDBs
-			fileToRead.seek(0);
-			for (int i=0; i < numOfBlocks; i++) { // Iterate through number of blocks
-				VirtualDiskBlock vdb = new VirtualDiskBlock(blockSize);
-				for (int j=0; j < usableBytes; j++) {
-					if (byteCounter == (int) fileToReadSize) // Verify read the total bytes in the RAF
-						break;
-					vdb.setElement(j, fileToRead.readByte());	// Set the read byte into the VDB
-					byteCounter++;  // Increase the counter after reading a byte from RAF
-				}
-				vdbArray.add(vdb); // Add the block to the ArrayList
-			}
-			fileToRead.close(); // Close RAF
-			return vdbArray;
-		}
-		catch (IOException e) {
-			System.err.println("Unable to open random access file.");
-		}	
-		return null;
-	}
-	/**
-	 * Sets the content of an internal file into an ArrayList of VirtualDiskBlock
+	 * Writes the content of an internal file into an output stream, block by block
+	 * as it is read. Each run of consecutive data blocks, up to RUN_BUFFER_SIZE bytes, 
+	 * is read with a single transfer and only the bytes of content are written, the 
+	 * last block trimmed to the size of the file.
 	 * @param d DiskUnit in use.
-	 * @param fileBlockNum First block number of the file.
-	 * @return Returns an ArrayList of VirtualDiskBlock with contents of internal file.
+	 * @param root Root of the block map of the file, kept in its i-node.
+	 * @param size Size of the file in bytes.
+	 * @param out Stream where the content is written.
+	 * @throws IOException If the content could not be written into the stream.
 	 */
-	public static ArrayList<VirtualDiskBlock> setFileContentToVDBs(DiskUnit d, int fileBlockNum) {
-		
-		int blockSize = d.getBlockSize();
-		ArrayList<Integer> fileBlockNums = FileLoaderAndManager.allFileBlockNums(d, fileBlockNum); // ArrayList with the block numbers of the file 
-		
-		ArrayList<VirtualDiskBlock> fileContent = new ArrayList<>(); // To store the VDBs with the content of the file
-		
-		for (Integer blockNum : fileBlockNums) {  // Iterate through the block numbers of the file
-			
-			VirtualDiskBlock vdb = copyBlockToVDB(d, blockNum);
-			copyIntToBlock(vdb, blockSize-4, 0); // Erase the reference to the next block
-			
-			fileContent.add(vdb); // add VDB to the ArrayList
-			
-		}
+	public static void writeFileContent(DiskUnit d, int root, long size, OutputStream out) throws IOException {
 		
-		return fileContent;
+		FileLayout layout = d.getFileLayout();
+		int payload = layout.getPayloadSize();
+		int[] fileBlockNums = layout.getBlocks(d, root, layout.getNumOfBlocks(size)); // The block numbers of the file
 		
-	}
-	/**
-	 * Obtains an ArrayList of VirtualDiskBlocks, copies its content as a single string
-	 * and prints the file string.
-	 * @param vdBlocks ArrayList of VirtualDiskBlocks
-	 */
-	public static void printContentOfVDBlocks(ArrayList<VirtualDiskBlock> vdBlocks) {
-		
-		String fileString = ""; // Initial file string
+		int maxRun = Math.max(1, RUN_BUFFER_SIZE / d.getBlockSize());  // Most blocks read at once
+		VirtualDiskBlock[] buffer = new VirtualDiskBlock[maxRun];
+		for (int i=0; i < maxRun; i++)
+			buffer[i] = new VirtualDiskBlock(d.getBlockSize());
 		
-		for (VirtualDiskBlock block : vdBlocks) { 
-			
-			char[] blockCharArray = new char[block.getCapacity()-4]; // Copy bytes in the block into a char array
-			for (int i=0; i<block.getCapacity()-4; i++) {    // Get bytes up to the blocksize - 4, the next data block index is stored there.
-				blockCharArray[i] = getCharFromBlock(block, i);
+		long remaining = size;  // Bytes of content not written yet
+		int runStart = 0;
+		for (int i=1; i <= fileBlockNums.length && remaining > 0; i++) {  // Iterate through the runs of consecutive block numbers
+			if (i == fileBlockNums.length || fileBlockNums[i] != fileBlockNums[i-1]+1 || i - runStart == maxRun) {
+				VirtualDiskBlock[] run = (i - runStart == maxRun) ? buffer : Arrays.copyOf(buffer, i - runStart);
+				if (run.length == 1)
+					d.read(fileBlockNums[runStart], run[0]);
+				else
+					d.readBlocks(fileBlockNums[runStart], run);
+				for (VirtualDiskBlock vdb : run) {
+					int count = (int) Math.min(payload, remaining);  // The rest of the block links the data blocks or is past the end of the file
+					out.write(vdb.getBytes(), 0, count);
+					remaining -= count;
+				}
+				runStart = i;
 			}
-			fileString += new String(blockCharArray); // Concatenate the block string into the file string
 		}
-		
-		System.out.println(fileString); // Print the contents of the file
 	}
 	
 	/**
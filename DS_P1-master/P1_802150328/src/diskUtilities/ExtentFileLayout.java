@@ -0,0 +1,285 @@
+package diskUtilities;
+
+import java.util.ArrayList;
+
+import diskExceptions.FullDiskException;
+
+/**
+ * Layout in which the data blocks of a file are described by extents: runs of
+ * consecutive disk blocks given as (first block, number of blocks). The i-node
+ * points to the first extent block, which holds the number of extents in it (first
+ * 4 bytes), the extents (8 bytes each) and the number of the next extent block
+ * (last 4 bytes, 0 in the last one). Data blocks hold only file content, so a
+ * file is read with a few transfers of consecutive blocks.
+ * @author Francisco Diaz
+ *
+ */
+public class ExtentFileLayout implements FileLayout {
+
+	private int blockSize;         // bytes per block of the disk
+	private int extentsPerBlock;   // extents that fit in an extent block
+
+	public ExtentFileLayout(int blockSize) {
+		this.blockSize = blockSize;
+		extentsPerBlock = (blockSize - 8) / 8;
+	}
+
+	public int getPayloadSize() {
+		return blockSize;
+	}
+
+	public int getNumOfBlocks(long size) {
+		return (int) ((size + blockSize - 1) / blockSize);
+	}
+
+	/**
+	 * Data blocks are not linked, nothing is written into them.
+	 */
+	public void setNextBlock(VirtualDiskBlock vdb, int nextBlock) {
+	}
+
+	public int getBlock(DiskUnit d, int root, int index) {
+		VirtualDiskBlock vdb = new VirtualDiskBlock(blockSize);
+		int first = 0;   // index in the file of the first block of the extent
+		for (int eb = root; eb != 0; eb = DiskUtils.getIntFromBlock(vdb, blockSize-4)) {
+			d.read(eb, vdb);
+			int count = DiskUtils.getIntFromBlock(vdb, 0);
+			for (int e=0; e < count; e++) {
+				int length = DiskUtils.getIntFromBlock(vdb, 8 + 8*e);
+				if (index < first + length)
+					return DiskUtils.getIntFromBlock(vdb, 4 + 8*e) + (index - first);
+				first += length;
+			}
+		}
+		return 0;
+	}
+
+	public int[] getBlocks(DiskUnit d, int root, int numOfBlocks) {
+		int[] blocks = new int[numOfBlocks];
+		int taken = 0;
+		VirtualDiskBlock vdb = new VirtualDiskBlock(blockSize);
+		for (int eb = root; eb != 0 && taken < numOfBlocks; eb = DiskUtils.getIntFromBlock(vdb, blockSize-4)) {
+			d.read(eb, vdb);
+			int count = DiskUtils.getIntFromBlock(vdb, 0);
+			for (int e=0; e < count && taken < numOfBlocks; e++) {
+				int start = DiskUtils.getIntFromBlock(vdb, 4 + 8*e);
+				int length = DiskUtils.getIntFromBlock(vdb, 8 + 8*e);
+				for (int j=0; j < length && taken < numOfBlocks; j++)
+					blocks[taken++] = start + j;
+			}
+		}
+		return blocks;
+	}
+
+	public int[] getBlocks(DiskUnit d, int root, int firstIndex, int numOfBlocks) {
+		int[] blocks = new int[numOfBlocks];
+		int taken = 0;
+		int first = 0;   // index in the file of the first block of the extent
+		VirtualDiskBlock vdb = new VirtualDiskBlock(blockSize);
+		for (int eb = root; eb != 0 && taken < numOfBlocks; eb = DiskUtils.getIntFromBlock(vdb, blockSize-4)) {
+			d.read(eb, vdb);
+			int count = DiskUtils.getIntFromBlock(vdb, 0);
+			for (int e=0; e < count && taken < numOfBlocks; e++) {
+				int start = DiskUtils.getIntFromBlock(vdb, 4 + 8*e);
+				int length = DiskUtils.getIntFromBlock(vdb, 8 + 8*e);
+				for (int j = Math.max(0, firstIndex + taken - first); j < length && taken < numOfBlocks; j++)
+					blocks[taken++] = start + j;
+				first += length;
+			}
+		}
+		return blocks;
+	}
+
+	/**
+	 * Groups the data blocks into extents and writes them into as many extent
+	 * blocks as needed (at least one, even for an empty file).
+	 */
+	public int createMap(DiskUnit d, int[] blocks) throws FullDiskException {
+		ArrayList<int[]> extents = new ArrayList<>();   // {first block, number of blocks}
+		for (int bn : blocks) {
+			int[] last = extents.isEmpty() ? null : extents.get(extents.size()-1);
+			if (last != null && last[0] + last[1] == bn)
+				last[1]++;
+			else
+				extents.add(new int[] {bn, 1});
+		}
+
+		int numOfExtentBlocks = Math.max(1, (extents.size() + extentsPerBlock - 1) / extentsPerBlock);
+		int[] extentBlocks = BlockManager.allocate(d, numOfExtentBlocks);
+		for (int i=0; i < numOfExtentBlocks; i++) {
+			VirtualDiskBlock vdb = new VirtualDiskBlock(blockSize);
+			int count = 0;
+			for (int e = i*extentsPerBlock; e < extents.size() && count < extentsPerBlock; e++, count++) {
+				DiskUtils.copyIntToBlock(vdb, 4 + 8*count, extents.get(e)[0]);
+				DiskUtils.copyIntToBlock(vdb, 8 + 8*count, extents.get(e)[1]);
+			}
+			DiskUtils.copyIntToBlock(vdb, 0, count);
+			DiskUtils.copyIntToBlock(vdb, blockSize-4, (i < numOfExtentBlocks-1) ? extentBlocks[i+1] : 0);
+			d.write(extentBlocks[i], vdb);
+		}
+		return extentBlocks[0];
+	}
+
+	public int addBlock(DiskUnit d, int root, int index, int bn) throws FullDiskException {
+		return addBlocks(d, root, index, 0, new int[] {bn});
+	}
+
+	/**
+	 * Finds the last extent block once and grows its last extent with the new blocks 
+	 * that follow it; the others are added as new extents, in new extent blocks when 
+	 * the last one is full. Every new extent block is taken before anything is written,
+	 * so the map is left as it was if there is no space for them. Each extent block
+	 * that changes is written once.
+	 */
+	public int addBlocks(DiskUnit d, int root, int index, int last, int[] blocks) throws FullDiskException {
+		int eb = root;
+		VirtualDiskBlock vdb = DiskUtils.copyBlockToVDB(d, eb);
+		for (int next = DiskUtils.getIntFromBlock(vdb, blockSize-4); next != 0; next = DiskUtils.getIntFromBlock(vdb, blockSize-4)) {
+			eb = next;
+			d.read(eb, vdb);
+		}
+		int count = DiskUtils.getIntFromBlock(vdb, 0);
+
+		// Extent blocks needed: a new one every time the last one fills up
+		int needed = 0;
+		int n = count;
+		int end = (count > 0) ? DiskUtils.getIntFromBlock(vdb, 4 + 8*(count-1)) + DiskUtils.getIntFromBlock(vdb, 8 + 8*(count-1)) : -1;
+		for (int bn : blocks) {
+			if (n > 0 && end == bn) {
+				end++;
+				continue;
+			}
+			if (n == extentsPerBlock) {
+				needed++;
+				n = 0;
+			}
+			n++;
+			end = bn + 1;
+		}
+		int[] newExtentBlocks = BlockManager.allocate(d, needed);
+		int taken = 0;
+
+		for (int bn : blocks) {
+			if (count > 0 && DiskUtils.getIntFromBlock(vdb, 4 + 8*(count-1)) + DiskUtils.getIntFromBlock(vdb, 8 + 8*(count-1)) == bn) {
+				DiskUtils.copyIntToBlock(vdb, 8 + 8*(count-1), DiskUtils.getIntFromBlock(vdb, 8 + 8*(count-1)) + 1);
+				continue;
+			}
+			if (count == extentsPerBlock) {   // the last extent block is full
+				int newExtentBlock = newExtentBlocks[taken++];
+				DiskUtils.copyIntToBlock(vdb, blockSize-4, newExtentBlock);
+				d.write(eb, vdb);
+				eb = newExtentBlock;
+				vdb = new VirtualDiskBlock(blockSize);
+				count = 0;
+			}
+			DiskUtils.copyIntToBlock(vdb, 4 + 8*count, bn);
+			DiskUtils.copyIntToBlock(vdb, 8 + 8*count, 1);
+			DiskUtils.copyIntToBlock(vdb, 0, ++count);
+		}
+		d.write(eb, vdb);
+		return root;
+	}
+
+	/**
+	 * Rewrites the extents from the extent block that holds the first block of the
+	 * range to the end of the map, splitting the extents around the range; the extent
+	 * blocks before it are not written. Extent blocks are added at the end if the
+	 * extents no longer fit in them, all taken before anything is written, and the
+	 * ones left over are freed.
+	 */
+	public int setBlocks(DiskUnit d, int root, int firstIndex, int[] blocks) throws FullDiskException {
+		ArrayList<Integer> extentBlocks = new ArrayList<>();   // from the one that holds firstIndex to the last one
+		ArrayList<int[]> extents = new ArrayList<>();          // {first block, number of blocks} in those extent blocks
+		int first = 0;   // index in the file of the first block of the extents kept in the list
+		VirtualDiskBlock vdb = new VirtualDiskBlock(blockSize);
+		for (int eb = root; eb != 0; eb = DiskUtils.getIntFromBlock(vdb, blockSize-4)) {
+			d.read(eb, vdb);
+			int count = DiskUtils.getIntFromBlock(vdb, 0);
+			int length = 0;
+			for (int e=0; e < count; e++)
+				length += DiskUtils.getIntFromBlock(vdb, 8 + 8*e);
+			if (extentBlocks.isEmpty() && firstIndex >= first + length && DiskUtils.getIntFromBlock(vdb, blockSize-4) != 0) {
+				first += length;   // the range is past this extent block
+				continue;
+			}
+			extentBlocks.add(eb);
+			for (int e=0; e < count; e++)
+				extents.add(new int[] {DiskUtils.getIntFromBlock(vdb, 4 + 8*e), DiskUtils.getIntFromBlock(vdb, 8 + 8*e)});
+		}
+
+		ArrayList<int[]> newExtents = new ArrayList<>();
+		int lastIndex = firstIndex + blocks.length - 1;
+		int index = first;   // index in the file of the first block of the extent
+		for (int[] extent : extents) {
+			for (int j=0; j < extent[1]; ) {
+				int i = index + j;
+				if (i >= firstIndex && i <= lastIndex) {
+					addExtent(newExtents, blocks[i - firstIndex], 1);
+					j++;
+				}
+				else {   // the blocks of the extent up to the range, or up to its end
+					int length = (i < firstIndex) ? Math.min(extent[1] - j, firstIndex - i) : extent[1] - j;
+					addExtent(newExtents, extent[0] + j, length);
+					j += length;
+				}
+			}
+			index += extent[1];
+		}
+
+		int numOfExtentBlocks = Math.max(1, (newExtents.size() + extentsPerBlock - 1) / extentsPerBlock);
+		if (numOfExtentBlocks > extentBlocks.size())
+			for (int bn : BlockManager.allocate(d, numOfExtentBlocks - extentBlocks.size()))
+				extentBlocks.add(bn);
+		for (int i=0; i < numOfExtentBlocks; i++) {
+			vdb = new VirtualDiskBlock(blockSize);
+			int count = 0;
+			for (int e = i*extentsPerBlock; e < newExtents.size() && count < extentsPerBlock; e++, count++) {
+				DiskUtils.copyIntToBlock(vdb, 4 + 8*count, newExtents.get(e)[0]);
+				DiskUtils.copyIntToBlock(vdb, 8 + 8*count, newExtents.get(e)[1]);
+			}
+			DiskUtils.copyIntToBlock(vdb, 0, count);
+			DiskUtils.copyIntToBlock(vdb, blockSize-4, (i < numOfExtentBlocks-1) ? extentBlocks.get(i+1) : 0);
+			d.write(extentBlocks.get(i), vdb);
+		}
+		if (numOfExtentBlocks < extentBlocks.size()) {   // the extents were merged into fewer blocks
+			int[] unused = ChainedFileLayout.toArray(extentBlocks.subList(numOfExtentBlocks, extentBlocks.size()));
+			BlockManager.discard(d, unused);
+			BlockManager.release(d, unused);
+		}
+		return root;
+	}
+
+	/**
+	 * Adds a run of blocks at the end of a list of extents, growing the last
+	 * extent if the run follows it.
+	 * @param extents List of extents, {first block, number of blocks}.
+	 * @param start Number of the first block of the run.
+	 * @param length Number of blocks of the run.
+	 */
+	private static void addExtent(ArrayList<int[]> extents, int start, int length) {
+		int[] last = extents.isEmpty() ? null : extents.get(extents.size()-1);
+		if (last != null && last[0] + last[1] == start)
+			last[1] += length;
+		else
+			extents.add(new int[] {start, length});
+	}
+
+	public boolean linksDataBlocks() {
+		return false;
+	}
+
+	public int[] deleteMap(DiskUnit d, int root, int numOfBlocks) {
+		int[] blocks = getBlocks(d, root, numOfBlocks);
+		ArrayList<Integer> extentBlocks = new ArrayList<>();
+		VirtualDiskBlock vdb = new VirtualDiskBlock(blockSize);
+		for (int eb = root; eb != 0; eb = DiskUtils.getIntFromBlock(vdb, blockSize-4)) {
+			extentBlocks.add(eb);
+			d.read(eb, vdb);
+		}
+		int[] mapBlocks = ChainedFileLayout.toArray(extentBlocks);
+		BlockManager.discard(d, mapBlocks);
+		BlockManager.release(d, mapBlocks);
+		return blocks;
+	}
+
+}
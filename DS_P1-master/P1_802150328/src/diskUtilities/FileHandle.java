@@ -0,0 +1,360 @@
+package diskUtilities;
+
+import java.util.Arrays;
+
+import diskExceptions.FullDiskException;
+import diskExceptions.NonExistingFileException;
+
+/**
+ * Handle to read and write a data file of a disk unit at any position. Only the
+ * blocks that cover the bytes requested are read or written: the blocks are found
+ * through the layout of the data files of the disk and partial blocks are read,
+ * modified and written back, so the links kept in the data blocks are preserved.
+ * @author Francisco Diaz
+ *
+ */
+public class FileHandle {
+
+	private DiskUnit disk;       // Disk where the file lives
+	private FileLayout layout;   // Layout of the data files of the disk
+	private int iNodeIndex;      // i-node of the file
+	private int root;            // Root of the block map of the file
+	private long size;           // Size of the file in bytes
+	private boolean open;
+
+	private FileHandle(DiskUnit disk, int iNodeIndex) {
+		this.disk = disk;
+		this.iNodeIndex = iNodeIndex;
+		layout = disk.getFileLayout();
+		root = iNodesManager.getFirstDataBlockFromiNode(disk, iNodeIndex);
+		size = iNodesManager.getSizeiNode(disk, iNodeIndex);
+		open = true;
+	}
+
+	/**
+	 * Opens a file of the root directory of the mounted disk unit.
+	 * @param fileName Name of the file.
+	 * @return Handle to the file.
+	 * @throws NonExistingFileException If there is no file with that name.
+	 */
+	public static FileHandle open(String fileName) throws NonExistingFileException {
+		return open(DiskManager.currentMountedDisk, fileName);
+	}
+
+	/**
+	 * Opens a file of the root directory of a disk unit.
+	 * @param disk DiskUnit where the file lives.
+	 * @param fileName Name of the file.
+	 * @return Handle to the file.
+	 * @throws NonExistingFileException If there is no file with that name.
+	 */
+	public static FileHandle open(DiskUnit disk, String fileName) throws NonExistingFileException {
+		int iNodeIndex = FileLoaderAndManager.findINodeOfFile(disk, DiskUtils.formatFileName(fileName), 0);
+		if (iNodeIndex < 0)
+			throw new NonExistingFileException("File not found in directory: "+fileName);
+		return new FileHandle(disk, iNodeIndex);
+	}
+
+	/**
+	 * Reads bytes of the file starting at a given position.
+	 * @param pos Position in the file of the first byte to read.
+	 * @param dst Array where the bytes are copied.
+	 * @param off Index in dst of the first byte copied.
+	 * @param len Maximum number of bytes to read.
+	 * @return Number of bytes read, or -1 if pos is at or past the end of the file.
+	 */
+	public int read(long pos, byte[] dst, int off, int len) {
+		checkRange(pos, dst, off, len);
+		if (pos >= size)
+			return -1;
+		len = (int) Math.min(len, size - pos);
+		if (len == 0)
+			return 0;
+
+		int payload = layout.getPayloadSize();
+		int firstIndex = (int) (pos / payload);
+		int[] blocks = layout.getBlocks(disk, root, firstIndex, (int) ((pos + len - 1) / payload) - firstIndex + 1);
+		VirtualDiskBlock vdb = new VirtualDiskBlock(disk.getBlockSize());
+		int done = 0;
+		for (int i=0; i < blocks.length; i++) {
+			int from = (i == 0) ? (int) (pos % payload) : 0;   // first byte of the block that is read
+			int count = Math.min(payload - from, len - done);
+			disk.read(blocks[i], vdb);
+			System.arraycopy(vdb.getBytes(), from, dst, off + done, count);
+			done += count;
+		}
+		return len;
+	}
+
+	/**
+	 * Writes bytes into the file starting at a given position, growing the file if
+	 * they go past its end. The bytes between the old end and pos, if any, are zeros.
+	 * @param pos Position in the file of the first byte to write.
+	 * @param src Array with the bytes to write.
+	 * @param off Index in src of the first byte written.
+	 * @param len Number of bytes to write.
+	 * @throws FullDiskException If there is no space to grow the file.
+	 */
+	public void write(long pos, byte[] src, int off, int len) throws FullDiskException {
+		checkRange(pos, src, off, len);
+		checkMaxSize(pos, len);
+		if (len == 0)
+			return;
+		long end = pos + len;
+		int payload = layout.getPayloadSize();
+		int firstIndex = (int) (pos / payload);
+		int lastIndex = (int) ((end - 1) / payload);
+		int numOfBlocks = (root == 0) ? 0 : layout.getNumOfBlocks(size);
+		// growing the file also writes its last block
+		unshare((end > size) ? Math.min(firstIndex, numOfBlocks-1) : firstIndex, lastIndex);
+		if (end > size)
+			grow(end);
+
+		int[] blocks = layout.getBlocks(disk, root, firstIndex, lastIndex - firstIndex + 1);
+		VirtualDiskBlock vdb = new VirtualDiskBlock(disk.getBlockSize());
+		int done = 0;
+		for (int i=0; i < blocks.length; i++) {
+			int from = (i == 0) ? (int) (pos % payload) : 0;
+			int count = Math.min(payload - from, len - done);
+			if (count < disk.getBlockSize())   // keep the rest of the block
+				disk.read(blocks[i], vdb);
+			System.arraycopy(src, off + done, vdb.getBytes(), from, count);
+			disk.write(blocks[i], vdb);
+			done += count;
+		}
+	}
+
+	/**
+	 * Writes bytes at the end of the file. Only the last data block of the file,
+	 * kept in its i-node, the new blocks and the end of the block map are read or
+	 * written: chained blocks are not followed, the pointers of an indexed map are
+	 * set a block of the map at a time, and only the chain of extent blocks, not
+	 * the data blocks, is followed to reach the last extent.
+	 * @param src Array with the bytes to write.
+	 * @param off Index in src of the first byte written.
+	 * @param len Number of bytes to write.
+	 * @throws FullDiskException If there is no space to grow the file.
+	 */
+	public void append(byte[] src, int off, int len) throws FullDiskException {
+		checkRange(0, src, off, len);
+		checkMaxSize(size, len);
+		if (len == 0)
+			return;
+		int payload = layout.getPayloadSize();
+		int numOfBlocks = (root == 0) ? 0 : layout.getNumOfBlocks(size);
+		if (size < (long) numOfBlocks * payload || layout.linksDataBlocks())   // only the last block of the file is written, if at all
+			unshare(numOfBlocks-1, numOfBlocks-1);
+		int done = 0;
+		if (numOfBlocks > 0 && size < (long) numOfBlocks * payload) {   // room left in the last block
+			int from = (int) (size - (long) (numOfBlocks-1) * payload);
+			done = Math.min(payload - from, len);
+			int last = lastBlock(numOfBlocks);
+			VirtualDiskBlock vdb = DiskUtils.copyBlockToVDB(disk, last);
+			System.arraycopy(src, off, vdb.getBytes(), from, done);
+			disk.write(last, vdb);
+		}
+		if (done < len) {
+			int[] newBlocks = BlockManager.allocate(disk, (len - done + payload - 1) / payload);
+			VirtualDiskBlock[] vdbs = new VirtualDiskBlock[newBlocks.length];
+			for (int i=0; i < newBlocks.length; i++) {
+				vdbs[i] = new VirtualDiskBlock(disk.getBlockSize());
+				int count = Math.min(payload, len - done);
+				System.arraycopy(src, off + done, vdbs[i].getBytes(), 0, count);
+				layout.setNextBlock(vdbs[i], (i == newBlocks.length-1) ? 0 : newBlocks[i+1]);
+				done += count;
+			}
+			try {
+				FileLoaderAndManager.writeBlockRuns(disk, newBlocks, 0, vdbs, vdbs.length);
+				addBlocks(numOfBlocks, newBlocks);
+			} catch (FullDiskException e) {
+				BlockManager.release(disk, newBlocks);   // No space for the block map, give back the data blocks
+				throw e;
+			}
+		}
+		size += len;
+		iNodesManager.setSizeOfiNode(disk, iNodeIndex, size);
+	}
+
+	/**
+	 * Gives the file its own copy of the blocks about to be written that are shared
+	 * with another file, so that writing them does not change the other file. Only
+	 * the blocks written are looked up, and only the run from the first to the last
+	 * shared one is copied and replaced in the block map; the rest of the file keeps
+	 * sharing its blocks. When the data blocks are linked, the shared blocks before
+	 * the run are copied too, since the block before a copy is written to link it.
+	 * @param firstIndex Index in the file of the first block written.
+	 * @param lastIndex Index in the file of the last block written, which may be past
+	 * the end of the file.
+	 */
+	private void unshare(int firstIndex, int lastIndex) throws FullDiskException {
+		BlockReferences references = disk.getBlockReferences();
+		if (root == 0 || references.isEmpty())
+			return;
+		int numOfBlocks = layout.getNumOfBlocks(size);
+		lastIndex = Math.min(lastIndex, numOfBlocks-1);
+		if (firstIndex < 0 || firstIndex > lastIndex)
+			return;
+		int[] written = (firstIndex == numOfBlocks-1) ? new int[] {lastBlock(numOfBlocks)}
+				: layout.getBlocks(disk, root, firstIndex, lastIndex - firstIndex + 1);
+		int first = -1;   // indexes in written of the first and last shared blocks
+		int last = -1;
+		for (int i=0; i < written.length; i++)
+			if (references.isShared(written[i])) {
+				if (first < 0)
+					first = i;
+				last = i;
+			}
+		if (first < 0)
+			return;
+		int[] oldBlocks = Arrays.copyOfRange(written, first, last+1);
+		firstIndex += first;
+		if (layout.linksDataBlocks() && firstIndex > 0) {
+			int[] before = layout.getBlocks(disk, root, 0, firstIndex);
+			int from = firstIndex;
+			while (from > 0 && references.isShared(before[from-1]))
+				from--;
+			int[] run = Arrays.copyOfRange(before, from, firstIndex + oldBlocks.length);
+			System.arraycopy(oldBlocks, 0, run, firstIndex - from, oldBlocks.length);
+			oldBlocks = run;
+			firstIndex = from;
+		}
+
+		VirtualDiskBlock[] vdbs = new VirtualDiskBlock[oldBlocks.length];
+		for (int i=0; i < vdbs.length; i++)
+			vdbs[i] = new VirtualDiskBlock(disk.getBlockSize());
+		FileLoaderAndManager.readBlockRuns(disk, oldBlocks, 0, vdbs, vdbs.length);
+		int[] newBlocks = BlockManager.allocate(disk, oldBlocks.length);
+		for (int i=0; i < newBlocks.length-1; i++)   // the last copy keeps the link to the block after the run
+			layout.setNextBlock(vdbs[i], newBlocks[i+1]);
+		try {
+			FileLoaderAndManager.writeBlockRuns(disk, newBlocks, 0, vdbs, vdbs.length);
+			int newRoot = layout.setBlocks(disk, root, firstIndex, newBlocks);
+			if (newRoot != root) {
+				root = newRoot;
+				iNodesManager.setDataBlockToINode(disk, iNodeIndex, root);
+			}
+		} catch (FullDiskException e) {
+			BlockManager.release(disk, newBlocks);   // No space for the block map, give back the copies
+			throw e;
+		}
+		if (firstIndex + oldBlocks.length == numOfBlocks)
+			iNodesManager.setLastDataBlockOfiNode(disk, iNodeIndex, newBlocks[newBlocks.length-1]);
+		int[] freed = BlockManager.dropReferences(disk, oldBlocks);   // blocks of the run that were not shared
+		BlockManager.discard(disk, freed);
+		BlockManager.release(disk, freed);
+	}
+
+	/**
+	 * Adds to the file the zeroed blocks it needs to reach a new size, taken at once,
+	 * and sets the new size in its i-node.
+	 * @param newSize New size of the file in bytes.
+	 */
+	private void grow(long newSize) throws FullDiskException {
+		int numOfBlocks = (root == 0) ? 0 : layout.getNumOfBlocks(size);
+		int newNumOfBlocks = layout.getNumOfBlocks(newSize);
+		int payload = layout.getPayloadSize();
+		if (numOfBlocks > 0 && size % payload != 0) {   // the bytes past the old end of the last block must read as zeros
+			int last = lastBlock(numOfBlocks);
+			VirtualDiskBlock vdb = DiskUtils.copyBlockToVDB(disk, last);
+			for (int i = (int) (size % payload); i < payload; i++)
+				vdb.setElement(i, (byte) 0);
+			disk.write(last, vdb);
+		}
+		if (newNumOfBlocks > numOfBlocks) {
+			int[] newBlocks = BlockManager.allocate(disk, newNumOfBlocks - numOfBlocks);
+			try {
+				for (int i=0; i < newBlocks.length; i++) {
+					VirtualDiskBlock vdb = new VirtualDiskBlock(disk.getBlockSize());
+					layout.setNextBlock(vdb, (i == newBlocks.length-1) ? 0 : newBlocks[i+1]);
+					disk.write(newBlocks[i], vdb);
+				}
+				addBlocks(numOfBlocks, newBlocks);
+			} catch (FullDiskException e) {
+				BlockManager.release(disk, newBlocks);   // No space for the block map, give back the data blocks
+				throw e;
+			}
+		}
+		size = newSize;
+		iNodesManager.setSizeOfiNode(disk, iNodeIndex, size);
+	}
+
+	/**
+	 * Gets the last data block of the file from its i-node, finding it through the
+	 * block map, and keeping it in the i-node, if the i-node does not know it.
+	 * @param numOfBlocks Number of data blocks of the file, at least 1.
+	 * @return Number of the last data block.
+	 */
+	private int lastBlock(int numOfBlocks) {
+		int last = iNodesManager.getLastDataBlockOfiNode(disk, iNodeIndex);
+		if (last == 0) {
+			last = layout.getBlock(disk, root, numOfBlocks - 1);
+			iNodesManager.setLastDataBlockOfiNode(disk, iNodeIndex, last);
+		}
+		return last;
+	}
+
+	/**
+	 * Adds written data blocks at the end of the file, after its last block, and
+	 * keeps the new last block in its i-node. If there is no space to grow the block
+	 * map, the file is left as it was.
+	 * @param numOfBlocks Number of data blocks the file had.
+	 * @param newBlocks Numbers of the blocks added, linked with setNextBlock.
+	 */
+	private void addBlocks(int numOfBlocks, int[] newBlocks) throws FullDiskException {
+		int last = (numOfBlocks == 0) ? 0 : lastBlock(numOfBlocks);
+		int oldRoot = root;
+		if (root == 0)
+			root = layout.createMap(disk, new int[0]);
+		try {
+			root = layout.addBlocks(disk, root, numOfBlocks, last, newBlocks);
+		} catch (FullDiskException e) {
+			if (oldRoot == 0 && root != 0)   // give back the map just created
+				layout.deleteMap(disk, root, 0);
+			root = oldRoot;
+			throw e;
+		}
+		if (root != oldRoot)
+			iNodesManager.setDataBlockToINode(disk, iNodeIndex, root);
+		iNodesManager.setLastDataBlockOfiNode(disk, iNodeIndex, newBlocks[newBlocks.length-1]);
+	}
+
+	/**
+	 * Size of the file.
+	 * @return Size of the file in bytes.
+	 */
+	public long size() {
+		checkOpen();
+		return size;
+	}
+
+	/**
+	 * Closes the handle. The file can not be read or written through it anymore.
+	 */
+	public void close() {
+		open = false;
+	}
+
+	private void checkRange(long pos, byte[] b, int off, int len) {
+		checkOpen();
+		if (pos < 0 || off < 0 || len < 0 || off + len > b.length)
+			throw new IndexOutOfBoundsException("Invalid position or range: pos="+pos+", off="+off+", len="+len);
+	}
+
+	/**
+	 * Verifies that the i-nodes of the disk can keep the size of the file after
+	 * writing some bytes at a given position.
+	 * @param pos Position in the file of the first byte written.
+	 * @param len Number of bytes written.
+	 */
+	private void checkMaxSize(long pos, int len) {
+		long maxSize = iNodesManager.getMaxFileSize(disk);
+		if (pos > maxSize - len)
+			throw new IllegalArgumentException("A file can not be larger than "+maxSize+" bytes.");
+	}
+
+	private void checkOpen() {
+		if (!open)
+			throw new IllegalStateException("The file handle is closed.");
+	}
+
+}
@@ -0,0 +1,132 @@
+package diskUtilities;
+
+import diskExceptions.FullDiskException;
+
+/**
+ * Way in which the data blocks of a data file are found from its i-node. The
+ * i-node keeps the root of the file's block map (the integer stored where the
+ * first data block used to be) and the layout maps the index of a block in the
+ * file to the number of the disk block that holds it. Directories are always
+ * chains of blocks linked through their last 4 bytes, whatever the layout of
+ * the data files of the disk.
+ * @author Francisco Diaz
+ *
+ */
+public interface FileLayout {
+
+	/**
+	 * Bytes of file content stored in each data block.
+	 * @return Payload of a data block.
+	 */
+	int getPayloadSize();
+
+	/**
+	 * Number of data blocks that a file of the given size has.
+	 * @param size Size of the file in bytes.
+	 * @return Number of data blocks of the file.
+	 */
+	int getNumOfBlocks(long size);
+
+	/**
+	 * Writes into a data block, about to be written into the disk, whatever the
+	 * layout keeps in the data blocks to link them.
+	 * @param vdb Data block of the file.
+	 * @param nextBlock Number of the next data block of the file, 0 for the last one.
+	 */
+	void setNextBlock(VirtualDiskBlock vdb, int nextBlock);
+
+	/**
+	 * Gets the disk block that holds a block of a file.
+	 * @param d DiskUnit in use.
+	 * @param root Root of the block map of the file.
+	 * @param index Index of the block in the file.
+	 * @return Number of the disk block, or 0 if the file has no such block.
+	 */
+	int getBlock(DiskUnit d, int root, int index);
+
+	/**
+	 * Gets, in order, the disk blocks that hold the first numOfBlocks blocks of a file.
+	 * @param d DiskUnit in use.
+	 * @param root Root of the block map of the file.
+	 * @param numOfBlocks Number of blocks of the file.
+	 * @return Numbers of the disk blocks.
+	 */
+	int[] getBlocks(DiskUnit d, int root, int numOfBlocks);
+
+	/**
+	 * Gets, in order, the disk blocks that hold a range of blocks of a file, 
+	 * without going through the map of the blocks past the range.
+	 * @param d DiskUnit in use.
+	 * @param root Root of the block map of the file.
+	 * @param firstIndex Index in the file of the first block of the range.
+	 * @param numOfBlocks Number of blocks of the range, all within the file.
+	 * @return Numbers of the disk blocks.
+	 */
+	int[] getBlocks(DiskUnit d, int root, int firstIndex, int numOfBlocks);
+
+	/**
+	 * Writes the block map of a new file whose data blocks are the given ones.
+	 * The data blocks must have been written with setNextBlock.
+	 * @param d DiskUnit in use.
+	 * @param blocks Numbers of the data blocks of the file, in order.
+	 * @return Root of the block map, to be kept in the i-node of the file.
+	 * @throws FullDiskException If there is no space for the block map.
+	 */
+	int createMap(DiskUnit d, int[] blocks) throws FullDiskException;
+
+	/**
+	 * Adds a data block at the end of a file.
+	 * @param d DiskUnit in use.
+	 * @param root Root of the block map of the file.
+	 * @param index Index of the new block, the number of blocks the file had.
+	 * @param bn Number of the disk block added.
+	 * @return Root of the block map, which may have changed.
+	 * @throws FullDiskException If there is no space to grow the block map.
+	 */
+	int addBlock(DiskUnit d, int root, int index, int bn) throws FullDiskException;
+
+	/**
+	 * Adds data blocks at the end of a file whose last data block is known, without
+	 * going through the map to find it. The new blocks must have been written with
+	 * setNextBlock, each linked to the next one and the last one to 0.
+	 * @param d DiskUnit in use.
+	 * @param root Root of the block map of the file.
+	 * @param index Index of the first new block, the number of blocks the file had.
+	 * @param last Number of the last data block of the file, 0 if it had none.
+	 * @param blocks Numbers of the disk blocks added, in order.
+	 * @return Root of the block map, which may have changed.
+	 * @throws FullDiskException If there is no space to grow the block map.
+	 */
+	int addBlocks(DiskUnit d, int root, int index, int last, int[] blocks) throws FullDiskException;
+
+	/**
+	 * Replaces, in the block map of a file, a range of its data blocks with other
+	 * disk blocks that hold the same content. The new blocks must have been written
+	 * with setNextBlock, each linked to the next one and the last one to the block
+	 * that follows the range. The map is left as it was if there is no space for it.
+	 * @param d DiskUnit in use.
+	 * @param root Root of the block map of the file.
+	 * @param firstIndex Index in the file of the first block replaced.
+	 * @param blocks Numbers of the new disk blocks, in order, all within the file.
+	 * @return Root of the block map, which may have changed.
+	 * @throws FullDiskException If there is no space to grow the block map.
+	 */
+	int setBlocks(DiskUnit d, int root, int firstIndex, int[] blocks) throws FullDiskException;
+
+	/**
+	 * Determines if the data blocks of a file hold its links, so that replacing a
+	 * data block also writes the block before it.
+	 * @return True if the data blocks are linked with setNextBlock.
+	 */
+	boolean linksDataBlocks();
+
+	/**
+	 * Frees the blocks used by the block map of a file, without freeing its data blocks.
+	 * @param d DiskUnit in use.
+	 * @param root Root of the block map of the file.
+	 * @param numOfBlocks Number of blocks of the file.
+	 * @return Numbers of the data blocks of the file, still to be freed.
+	 */
+	int[] deleteMap(DiskUnit d, int root, int numOfBlocks);
+
+}
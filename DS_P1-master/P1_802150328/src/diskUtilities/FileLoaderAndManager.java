@@ -1,12 +1,19 @@
 package diskUtilities;
 
+import java.io.BufferedOutputStream;
 import java.io.File;
-import java.io.FileNotFoundException;
 import java.io.IOException;
-import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.ReadableByteChannel;
+import java.nio.file.StandardOpenOption;
 import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
 
 import diskExceptions.FullDiskException;
+import diskExceptions.NonExistingFileException;
 
 /**
  * Class that manages the existing files and is able to load the file in the current disk
@@ -15,6 +22,10 @@ import diskExceptions.FullDiskException;
  */
 public class FileLoaderAndManager {
 
+	private static final int STREAM_BUFFER_SIZE = 64 * 1024;  // Bytes of a file read or written at a time
+	private static final int READ_AHEAD_CHUNKS = 2;           // Chunks read ahead of the one written when copying a file
+	private static final int MIN_FILTER_NAMES = 256;          // Names the Bloom filter of a directory is sized for at least
+
 	/**
 	 * Loads an external into a file that lives inside the current disk
 	 * @param externalFileToReadFrom Name of the file to read
@@ -36,59 +47,100 @@ public class FileLoaderAndManager {
 		// Format file string to fit 20 bytes
 		fileName = DiskUtils.formatFileName(fileName);
 
-		// Place file content inside an ArrayList of VirtualDiskBlock
 		DiskUnit disk = DiskManager.currentMountedDisk;
-		int blockSize = disk.getBlockSize();
-		ArrayList<VirtualDiskBlock> externalFileList; // Will hold contents of external file
-		int fileSize; // Will hold size of the external file (measured in bytes)
+		// The content of the external file is streamed into the disk through a read-only channel
+		try (FileChannel source = FileChannel.open(fileToRead.toPath(), StandardOpenOption.READ)) {
+			if (source.size() > iNodesManager.getMaxFileSize(disk)) {
+				System.out.println("File is too large for the disk.");
+				return;
+			}
+			long fileSize = source.size(); // Size of the external file (measured in bytes)
+			loadIntoDisk(disk, source, fileSize, fileName);
+		} catch (IOException e) {
+			System.err.println("Unable to read external file.");
+		}
+	}
+
+	/**
+	 * Appends the content of an external file at the end of a file of the current
+	 * directory. The content is streamed a chunk at a time, and each chunk is added
+	 * through a FileHandle, which writes only the last block of the file and the
+	 * blocks it adds, so appending costs the same however long the file is.
+	 * @param externalFileToReadFrom Name of the file to read
+	 * @param fileName Name of the file appended to
+	 */
+	public static void appendFile(String externalFileToReadFrom, String fileName) throws FullDiskException {
+
+		File fileToRead = new File(externalFileToReadFrom); // file to read from
+		if (!fileToRead.exists()) {
+			System.out.println("There is no such file named :"+externalFileToReadFrom);
+			return;
+		}
+		DiskUnit disk = DiskManager.currentMountedDisk;
+		FileHandle handle;
 		try {
-			RandomAccessFile rafToRead = new RandomAccessFile(externalFileToReadFrom, "rw"); // read, write
-			fileSize = (int) rafToRead.length(); // Get size of external file in bytes
-			rafToRead.close();
-			// Create random access file to read data.
-			// Set the contents of the external file into an ArrayList of VirtualDiskBlocks
-			externalFileList = DiskUtils.setExtFileContentToVDBs(externalFileToReadFrom, blockSize);  
-
-		} catch (FileNotFoundException e) {
-			System.err.println("Unable to open external file.");
+			handle = FileHandle.open(disk, fileName);
+		} catch (NonExistingFileException e) {
+			System.out.println("File not found in directory");
 			return;
+		}
+		try (FileChannel source = FileChannel.open(fileToRead.toPath(), StandardOpenOption.READ)) {
+			if (source.size() > iNodesManager.getMaxFileSize(disk) - handle.size()) {
+				System.out.println("File is too large for the disk.");
+				return;
+			}
+			ByteBuffer chunk = ByteBuffer.allocate(STREAM_BUFFER_SIZE);
+			for (int n = source.read(chunk); n != -1; n = source.read(chunk)) {
+				handle.append(chunk.array(), 0, n);
+				chunk.clear();
+			}
+		} catch (FullDiskException e) {
+			System.out.println(e.getMessage());
+			throw e;
 		} catch (IOException e) {
 			System.err.println("Unable to read external file.");
-			return;
-		} 
+		} finally {
+			handle.close();
+		}
+	}
 
-		// Block Number of the root directory
-		int rootBlockNumber = iNodesManager.getFirstDataBlockFromiNode(disk, 0);
-		// Verify if File already exists.
-		ArrayList<Integer> fileFoundedInDir = findFileInDir(disk, fileName, rootBlockNumber);
+	/**
+	 * Writes the content of an external file into a file of the root directory,
+	 * replacing its content if it exists.
+	 * @param disk DiskUnit in use.
+	 * @param source Channel from which the content is read.
+	 * @param fileSize Size of the content in bytes.
+	 * @param fileName Name of the file, formatted to 20 characters.
+	 * @throws IOException If the external file could not be read.
+	 */
+	private static void loadIntoDisk(DiskUnit disk, ReadableByteChannel source, long fileSize, String fileName) 
+			throws IOException, FullDiskException {
+
+		// Verify if File already exists in the root directory.
+		int iNodeFileReference = findINodeOfFile(disk, fileName, 0);
 		try {
-			if (fileFoundedInDir != null) { // If found the file erases the foundFile and creates it with new content.
-				VirtualDiskBlock foundFileBlock = DiskUtils.copyBlockToVDB(disk, fileFoundedInDir.get(0));
-				int filePos = fileFoundedInDir.get(1);
-				// Get iNode reference to that file 
-				int iNodeFileReference = DiskUtils.getIntFromBlock(foundFileBlock, filePos+20); // Reads the integer right after the filename, which is the iNode ref
-				int fileDataBlock = iNodesManager.getFirstDataBlockFromiNode(disk, iNodeFileReference);  // Data block from the i-node
+			if (iNodeFileReference != -1) { // If found the file replaces the content of the foundFile with the new one.
+				int fileDataBlock = iNodesManager.getFirstDataBlockFromiNode(disk, iNodeFileReference);  // Root of the block map from the i-node
+				long oldFileSize = iNodesManager.getSizeiNode(disk, iNodeFileReference);
+				// Write the new content first, so the file keeps the old one if the disk fills up
+				int newFileDataBlock = addNewFileInDisk(disk, source, fileSize);
+				iNodesManager.setDataBlockToINode(disk, iNodeFileReference, newFileDataBlock);
 				// Set size in of file into its i-node
 				iNodesManager.setSizeOfiNode(disk, iNodeFileReference, fileSize);
-				// Delete file from disk
-				deleteFileAtDisk(disk, fileDataBlock);
-				// Write new file in place of the older one
-				addNewFileInDisk(disk, fileDataBlock, externalFileList);
+				// Delete the old content from disk
+				deleteFileAtDisk(disk, fileDataBlock, oldFileSize);
 
 			}
 			else { // Create the new file.
 				// Write new file into root directory
 
-				int iNodeRef = writeFileInDirectory(disk, fileName, rootBlockNumber); // Returns the iNode reference.
-				// Enter the iNode and assign a free block
-				// Get free block number
-				int freeBN = BlockManager.getFreeBlockNumber(disk);
-				// Set data block in i-node to the free block 
+				int iNodeRef = writeFileInDirectory(disk, fileName, 0); // Returns the iNode reference.
+				// Write file into free blocks
+				int freeBN = addNewFileInDisk(disk, source, fileSize);
+				// Set the root of the block map of the file in its i-node 
 				iNodesManager.setDataBlockToINode(disk, iNodeRef, freeBN);
 				// Set size in of file into its i-node
 				iNodesManager.setSizeOfiNode(disk,iNodeRef, fileSize);
-				// Write file into the free block
-				addNewFileInDisk(disk, freeBN, externalFileList);
 			}
 		} catch (FullDiskException e) {
 			throw new FullDiskException(e);
@@ -103,62 +155,73 @@ public class FileLoaderAndManager {
 	 * @param file Internal file to copy content into
 	 */
 	public static void copyFile(String inputFile, String file) throws FullDiskException {
+		copyFile(inputFile, file, false);
+	}
+	/**
+	 * Copies one internal file to another internal file without copying its content:
+	 * the new file shares the data blocks of the input file, which are copied only
+	 * when one of the two files is rewritten.
+	 * @param inputFile Internal file to copy from
+	 * @param file Internal file that shares the content of inputFile
+	 */
+	public static void reflinkFile(String inputFile, String file) throws FullDiskException {
+		copyFile(inputFile, file, true);
+	}
+	/**
+	 * Copies one internal file to another internal file.
+	 * @param inputFile Internal file to copy from
+	 * @param file Internal file to copy content into
+	 * @param reflink True to share the data blocks of inputFile instead of copying them.
+	 */
+	private static void copyFile(String inputFile, String file, boolean reflink) throws FullDiskException {
 
 		// Format file strings to fit 20 bytes
 		inputFile = DiskUtils.formatFileName(inputFile);
 		file = DiskUtils.formatFileName(file);
 		// Mounted disk unit 
 		DiskUnit disk = DiskManager.currentMountedDisk;
-		// Block Number of the root directory
-		int rootBlockNum = iNodesManager.getFirstDataBlockFromiNode(disk, 0);
 		// Get input file from root
-		ArrayList<Integer> inputFileInfo = findFileInDir(disk, inputFile, rootBlockNum);
-		if (inputFileInfo == null || inputFileInfo.isEmpty()) {
+		int inputINodeRef = findINodeOfFile(disk, inputFile, 0);
+		if (inputINodeRef == -1) {
 			System.out.println("File not found in directory");
 			return;
 		}
-		VirtualDiskBlock vdb = DiskUtils.copyBlockToVDB(disk, inputFileInfo.get(0));
-		int inputFileBytePos = inputFileInfo.get(1);   // Starting byte position of the file name
 		// Get data block from i-node
-		int inputINodeRef = DiskUtils.getIntFromBlock(vdb, inputFileBytePos+20);
-		int inputFileSize = iNodesManager.getSizeiNode(disk, inputINodeRef);
+		long inputFileSize = iNodesManager.getSizeiNode(disk, inputINodeRef);
 		int inputFileDataBlock = iNodesManager.getFirstDataBlockFromiNode(disk, inputINodeRef);
 
-		// Get content of input file
-		ArrayList<VirtualDiskBlock> content = DiskUtils.setFileContentToVDBs(disk, inputFileDataBlock);
-
+		// Get the data blocks of input file, its content is copied block to block
+		FileLayout layout = disk.getFileLayout();
+		int[] inputFileBlocks = layout.getBlocks(disk, inputFileDataBlock, layout.getNumOfBlocks(inputFileSize));
 
 		// Verify if File already exists.
-		ArrayList<Integer> foundFile = findFileInDir(disk, file, rootBlockNum);
+		int iNodeRef = findINodeOfFile(disk, file, 0);
 
 		try {
-			if (foundFile != null) { // If found the file erases the foundFile and creates it with new content.
-				VirtualDiskBlock foundFileBlock = DiskUtils.copyBlockToVDB(disk, foundFile.get(0));
-				int fileBytePos = foundFile.get(1);
-				// Get iNode reference to that file 
-				int iNodeRef = DiskUtils.getIntFromBlock(foundFileBlock, fileBytePos+20); // Reads the integer right after the filename, which is the iNode ref
-				int fileDataBlock = iNodesManager.getFirstDataBlockFromiNode(disk, iNodeRef);  // Data block from the i-node
+			if (iNodeRef != -1) { // If found the file erases the foundFile and creates it with new content.
+				if (iNodeRef == inputINodeRef)   // A file copied into itself stays the same
+					return;
+				int fileDataBlock = iNodesManager.getFirstDataBlockFromiNode(disk, iNodeRef);  // Root of the block map from the i-node
+				long oldFileSize = iNodesManager.getSizeiNode(disk, iNodeRef);
+				// Write the new content first, so the file keeps the old one if the disk fills up
+				int newFileDataBlock = reflink ? linkBlocksInDisk(disk, inputFileBlocks) : copyBlocksInDisk(disk, inputFileBlocks);
+				iNodesManager.setDataBlockToINode(disk, iNodeRef, newFileDataBlock);
 				// Set size of file into its i-node
 				iNodesManager.setSizeOfiNode(disk, iNodeRef, inputFileSize);
-				// Delete file from disk
-				deleteFileAtDisk(disk, fileDataBlock);
-				// Write new file in place of the older one
-				addNewFileInDisk(disk, fileDataBlock, content);
+				// Delete the old content from disk
+				deleteFileAtDisk(disk, fileDataBlock, oldFileSize);
 
 			}
 			else { // Create the new file.
 				// Write new file into root directory
 
-				int iNodeRef = writeFileInDirectory(disk, file, rootBlockNum); // Returns the iNode reference.
-				// Enter the iNode and assign a free block
-				// Get free block number
-				int freeBN = BlockManager.getFreeBlockNumber(disk);
-				// Set data block in i-node to the free block 
+				iNodeRef = writeFileInDirectory(disk, file, 0); // Returns the iNode reference.
+				// Write file into free blocks
+				int freeBN = reflink ? linkBlocksInDisk(disk, inputFileBlocks) : copyBlocksInDisk(disk, inputFileBlocks);
+				// Set the root of the block map of the file in its i-node 
 				iNodesManager.setDataBlockToINode(disk, iNodeRef, freeBN);
 				// Set size in of file into its i-node
 				iNodesManager.setSizeOfiNode(disk,iNodeRef, inputFileSize);
-				// Write file into the free block
-				addNewFileInDisk(disk, freeBN, content);
 			} 
 		} catch (FullDiskException e) {
 			throw new FullDiskException(e);
@@ -178,13 +241,56 @@ public class FileLoaderAndManager {
 		System.out.println();
 		System.out.println("Filename:           Size (Bytes)");
 		System.out.println("-------------------------------------");
-		// Block Number of the root directory
-		int rootNumber = iNodesManager.getFirstDataBlockFromiNode(disk, 0);
-		//System.out.println("Root Number: "+rootNumber);
-		printFilesFromDir(disk, rootNumber); 
+		// The root directory is i-node 0
+		printFilesFromDir(disk, 0); 
 
 		System.out.println();
 	}
+	/**
+	 * Lists the names and sizes of the files of the current directory whose names
+	 * begin with a prefix. The i-node of each file is taken from the entry where
+	 * its name is found, so no name is looked up again, and its size from the 
+	 * i-nodes kept in memory.
+	 * @param prefix Beginning of the names of the files.
+	 */
+	public static void findFiles(String prefix) {
+		DiskUnit disk = DiskManager.currentMountedDisk;
+		Directory dir = iNodesManager.getDirectory(disk, 0);
+		ArrayList<Integer> iNodes = new ArrayList<>();
+		ArrayList<String> files = dir.findByPrefix(disk, iNodesManager.getFirstDataBlockFromiNode(disk, 0), prefix, iNodes);
+
+		System.out.println();
+		System.out.println("Filename:           Size (Bytes)");
+		System.out.println("-------------------------------------");
+		for (int i=0; i < files.size(); i++)
+			System.out.println(files.get(i)+" "+iNodesManager.getSizeiNode(disk, iNodes.get(i)));
+		System.out.println("Number of Files: " +files.size());
+		System.out.println();
+	}
+	/**
+	 * Removes a file from the current directory: its entry, its data blocks that
+	 * no other file shares and its i-node, which can be taken by a new file.
+	 * @param file Name of the file to remove.
+	 */
+	public static void removeFile(String file) {
+
+		file = DiskUtils.formatFileName(file);
+		DiskUnit disk = DiskManager.currentMountedDisk;
+		int iNodeRef = findINodeOfFile(disk, file, 0);
+		if (iNodeRef == -1) {
+			System.out.println("File not found in directory");
+			return;
+		}
+		if (iNodesManager.getTypeOfiNode(disk, iNodeRef) != iNodesManager.FILE) {
+			System.out.println("Cannot remove a directory with rm.");
+			return;
+		}
+		removeFileInDirectory(disk, file, 0);
+		int fileDataBlock = iNodesManager.getFirstDataBlockFromiNode(disk, iNodeRef);
+		if (fileDataBlock != 0)   // the file has blocks
+			deleteFileAtDisk(disk, fileDataBlock, iNodesManager.getSizeiNode(disk, iNodeRef));
+		iNodesManager.freeiNode(disk, iNodeRef);
+	}
 	/**
 	 * Displays the contents of a file in the current directory.
 	 * @param file Name of file to be displayed.
@@ -195,26 +301,26 @@ public class FileLoaderAndManager {
 		file = DiskUtils.formatFileName(file);
 		// Mounted disk unit 
 		DiskUnit disk = DiskManager.currentMountedDisk;
-		// Block Number of the root directory
-		int rootBlockNum = iNodesManager.getFirstDataBlockFromiNode(disk, 0);
 		// Get file from root
-		ArrayList<Integer> fileInfo = findFileInDir(disk, file, rootBlockNum);
-		if (fileInfo == null || fileInfo.isEmpty()) {
+		int iNodeRef = findINodeOfFile(disk, file, 0);
+		if (iNodeRef == -1) {
 			System.out.println("File not found in directory");
 			return;
 		}
-		VirtualDiskBlock vdb = DiskUtils.copyBlockToVDB(disk, fileInfo.get(0));
-		int fileBytePos = fileInfo.get(1);   // Starting byte position of the file name
 		// Get data block from i-node
-		int iNodeRef = DiskUtils.getIntFromBlock(vdb, fileBytePos+20);
 		int fileDataBlock = iNodesManager.getFirstDataBlockFromiNode(disk, iNodeRef);
+		long fileSize = iNodesManager.getSizeiNode(disk, iNodeRef);
 
-		// Get content from file
-		ArrayList<VirtualDiskBlock> content = DiskUtils.setFileContentToVDBs(disk, fileDataBlock);
-
-		// Print the file content
+		// Print the file content as it is read
 		System.out.println();
-		DiskUtils.printContentOfVDBlocks(content);
+		try {
+			BufferedOutputStream out = new BufferedOutputStream(System.out, STREAM_BUFFER_SIZE);
+			DiskUtils.writeFileContent(disk, fileDataBlock, fileSize, out);
+			out.write(System.lineSeparator().getBytes());
+			out.flush();
+		} catch (IOException e) {
+			System.err.println("Unable to display file.");
+		}
 	}
 
 	/**
@@ -245,6 +351,7 @@ public class FileLoaderAndManager {
 		if (freeDirArray.isEmpty()) {
 			try{
 				int nextFreeBlock = BlockManager.getFreeBlockNumber(d);
+				d.write(nextFreeBlock, new VirtualDiskBlock(blockSize)); // The new directory block starts empty
 				DiskUtils.copyIntToBlock(lastDataBlock, usableBytes, nextFreeBlock); // Copy new data block into last 4 bytes
 				d.write(blockNum, lastDataBlock); 	// Write the next block number into the block on the disk
 				freeDirArray.add(nextFreeBlock); 	// Block number to write into
@@ -259,7 +366,58 @@ public class FileLoaderAndManager {
 	}
 
 	/**
-	 * Find if file is inside the directory. Returns the block number 
+	 * Finds the entry of a file in a directory of any kind, through the Directory
+	 * given by the type of its i-node. The dentry cache of the disk is checked first:
+	 * a name known to be missing is not searched, and the position cached for a
+	 * found name is used if the entry is still there.
+	 * @param d DiskUnit to be used
+	 * @param file Name of file being searched, formatted to 20 characters.
+	 * @param dirINode Index of the i-node of the directory.
+	 * @return Returns ArrayList<Integer> with blockNumber in first index and
+	 * byte position in block in the second index. If file not found returns null.
+	 */
+	public static ArrayList<Integer> findFileInDirectory(DiskUnit d, String file, int dirINode) {
+		DentryCache.Dentry dentry = d.getDentryCache().get(dirINode, file);
+		if (dentry != null && dentry.isNegative())
+			return null;
+		if (dentry != null && dentry.getBlockNum() != 0) {
+			VirtualDiskBlock vdb = DiskUtils.copyBlockToVDB(d, dentry.getBlockNum());
+			if (getNameInEntry(vdb, dentry.getBytePos()).equals(file)) {
+				ArrayList<Integer> foundFileInfo = new ArrayList<>();
+				foundFileInfo.add(dentry.getBlockNum());
+				foundFileInfo.add(dentry.getBytePos());
+				return foundFileInfo;
+			}
+		}
+		return lookUpInDirectory(d, file, dirINode);
+	}
+	/**
+	 * Finds the entry of a file reading the directory, unless the Bloom filter of
+	 * the directory tells that it is not there, and records what is found in the
+	 * dentry cache of the disk.
+	 * @param d DiskUnit to be used
+	 * @param file Name of file being searched, formatted to 20 characters.
+	 * @param dirINode Index of the i-node of the directory.
+	 * @return ArrayList with the block number of the entry in the first index and 
+	 * its byte position in the block in the second, or null if not found.
+	 */
+	private static ArrayList<Integer> lookUpInDirectory(DiskUnit d, String file, int dirINode) {
+		NameFilter filter = d.getNameFilter(dirINode);
+		if (filter != null && !filter.mightContain(file)) {   // surely not in the directory
+			d.getDentryCache().putMissing(dirINode, file);
+			return null;
+		}
+		Directory dir = iNodesManager.getDirectory(d, dirINode);
+		ArrayList<Integer> fileInfo = dir.find(d, iNodesManager.getFirstDataBlockFromiNode(d, dirINode), file);
+		if (fileInfo == null)
+			d.getDentryCache().putMissing(dirINode, file);
+		else
+			d.getDentryCache().put(dirINode, file, getiNodeInEntry(d, fileInfo.get(0), fileInfo.get(1)), fileInfo.get(0), fileInfo.get(1));
+		return fileInfo;
+	}
+
+	/**
+	 * Find if file is inside a chain of directory blocks. Returns the block number 
 	 * and byte position in the block if it is found. If not found returns null. 
 	 * @param d DiskUnit to be used
 	 * @param file Name of file being searched.
@@ -282,6 +440,24 @@ public class FileLoaderAndManager {
 		}
 		return null;
 	}
+	/**
+	 * Finds a file in a directory and gets the index of its i-node. Names in the
+	 * dentry cache of the disk are answered without reading the directory.
+	 * @param d DiskUnit in use
+	 * @param file Name of the file, formatted to 20 characters.
+	 * @param dirINode Index of the i-node of the directory.
+	 * @return Index of the i-node of the file, or -1 if not found.
+	 */
+	public static int findINodeOfFile(DiskUnit d, String file, int dirINode) {
+		DentryCache.Dentry dentry = d.getDentryCache().get(dirINode, file);
+		if (dentry != null)
+			return dentry.getiNodeIndex();   // -1 for a name known to be missing
+		ArrayList<Integer> fileInfo = lookUpInDirectory(d, file, dirINode);
+		if (fileInfo == null)
+			return -1;
+		return getiNodeInEntry(d, fileInfo.get(0), fileInfo.get(1));
+	}
+
 	/**
 	 * Reads the file names inside a block and returns the byte position where
 	 * the file name begins in reference to the block. If file not found returns null.
@@ -299,12 +475,8 @@ public class FileLoaderAndManager {
 			if (iNodeIdx == 0)   // byte position = blockNum*blockSize+((i*24)-24)
 				break;
 
-			char[] fileCharArray = new char[20];
 			int fileBytePos = (i*24) - 24;
-			for (int j=0; j<20; j++) {
-				fileCharArray[j] = DiskUtils.getCharFromBlock(vdb, (fileBytePos+j));
-			}
-			String filename = new String(fileCharArray);
+			String filename = getNameInEntry(vdb, fileBytePos);
 			if (filename.equals(file)) {
 				return fileBytePos;
 			}	
@@ -312,7 +484,84 @@ public class FileLoaderAndManager {
 		return null;
 	}
 	/**
-	 * List of strings with information about the files in a directory block.
+	 * Gets the index of the i-node of a directory entry.
+	 * @param d DiskUnit in use.
+	 * @param blockNum Number of the directory block of the entry.
+	 * @param bytePos Byte position of the entry in the block.
+	 * @return Index of the i-node, which follows the file name.
+	 */
+	static int getiNodeInEntry(DiskUnit d, int blockNum, int bytePos) {
+		return DiskUtils.getIntFromBlock(DiskUtils.copyBlockToVDB(d, blockNum), bytePos+20);
+	}
+
+	/**
+	 * Removes an entry from a directory block whose entries are together at the 
+	 * start of the block, moving the last entry of the block into its place.
+	 * @param d DiskUnit in use.
+	 * @param blockNum Number of the directory block of the entry.
+	 * @param bytePos Byte position of the entry in the block.
+	 * @return Name of the entry moved into bytePos, or null if the removed entry was the last one.
+	 */
+	static String removeEntry(DiskUnit d, int blockNum, int bytePos) {
+		VirtualDiskBlock vdb = DiskUtils.copyBlockToVDB(d, blockNum);
+		int lastPos = bytePos;
+		while (lastPos + 48 <= vdb.getCapacity() - 4 && DiskUtils.getIntFromBlock(vdb, lastPos+44) != 0)
+			lastPos += 24;
+		String moved = null;
+		if (lastPos != bytePos) {
+			moved = getNameInEntry(vdb, lastPos);
+			System.arraycopy(vdb.getBytes(), lastPos, vdb.getBytes(), bytePos, 24);
+		}
+		Arrays.fill(vdb.getBytes(), lastPos, lastPos+24, (byte) 0);
+		d.write(blockNum, vdb);
+		return moved;
+	}
+
+	/**
+	 * Finds the files whose names begin with a prefix in some directory blocks.
+	 * @param d DiskUnit in use.
+	 * @param dirBlockNums Numbers of the directory blocks, in the order they are listed.
+	 * @param prefix Beginning of the names.
+	 * @param iNodes If not null, the index of the i-node of each file found is added to it.
+	 * @return Names of the files, formatted to 20 characters.
+	 */
+	static ArrayList<String> findByPrefixInBlocks(DiskUnit d, int[] dirBlockNums, String prefix, ArrayList<Integer> iNodes) {
+		ArrayList<String> found = new ArrayList<>();
+		for (int blockNum : dirBlockNums) {
+			VirtualDiskBlock vdb = DiskUtils.copyBlockToVDB(d, blockNum);
+			for (int bytePos=0; bytePos + 24 <= vdb.getCapacity() - 4; bytePos += 24) {
+				int iNodeIndex = DiskUtils.getIntFromBlock(vdb, bytePos+20);
+				if (iNodeIndex == 0)   // no more entries in the block
+					break;
+				String name = getNameInEntry(vdb, bytePos);
+				if (name.startsWith(prefix)) {
+					found.add(name);
+					if (iNodes != null)
+						iNodes.add(iNodeIndex);
+				}
+			}
+		}
+		return found;
+	}
+
+	/**
+	 * Gets the file name of a directory entry.
+	 * @param vdb Virtual block of a directory.
+	 * @param bytePos Byte position of the entry in the block.
+	 * @return The file name, 20 characters long.
+	 */
+	static String getNameInEntry(VirtualDiskBlock vdb, int bytePos) {
+		char[] fileCharArray = new char[20];
+		for (int j=0; j<20; j++) {
+			fileCharArray[j] = DiskUtils.getCharFromBlock(vdb, (bytePos+j));
+		}
+		return new String(fileCharArray);
+	}
+
+	/**
+	 * List of strings with information about the files in a directory block. The
+	 * sizes are those of the i-nodes kept in memory, so no block other than the 
+	 * directory block is read.
 	 * @param d DiskUnit in use.
 	 * @param vdb Virtual block of a directory.
 	 * @return Returns list of strings with information about the files in a directory block.
@@ -335,8 +584,7 @@ public class FileLoaderAndManager {
 				fileCharArray[j] = DiskUtils.getCharFromBlock(vdb, (fileBytePos+j));
 			}
 			String filename = new String(fileCharArray);
-			int iNodeRef = DiskUtils.getIntFromBlock(vdb, fileBytePos+20);
-			String filesize = Integer.toString(iNodesManager.getSizeiNode(d, iNodeRef));
+			String filesize = Long.toString(iNodesManager.getSizeiNode(d, iNodeIdx));
 			filename += " "+filesize;
 			filesInDir.add(filename);
 
@@ -371,162 +619,396 @@ public class FileLoaderAndManager {
 	}
 
 	/**
-	 * Write the file name and i-node reference into a directory.
-	 * Writes file name right after the last file name in directory.
+	 * Write the file name and i-node reference into a directory, where the kind
+	 * of directory places it.
 	 * @param disk DiskUnit in use.
 	 * @param file New file to write into directory.
-	 * @param blockNum Number of the block to write in.
-	 * @param blockSize Bytes per block.
+	 * @param dirINode Index of the i-node of the directory.
 	 * @throws IllegalArgumentException Thrown if filename length not 20 characters long.
 	 * @throws FullDiskException The disk is full.
 	 * @return Returns reference to the i-node of the new file.
 	 */
-	public static int  writeFileInDirectory(DiskUnit disk, String file, int blockNum) 
+	public static int  writeFileInDirectory(DiskUnit disk, String file, int dirINode) 
 			throws IllegalArgumentException, FullDiskException {
 
-		// Capacity
-		int blockSize = disk.getBlockSize();
-
-		// New file name string into char array.
-		char[] fileCharArray = file.toCharArray();
-		if (fileCharArray.length != 20) {
+		if (file.length() != 20) {
 			throw new IllegalArgumentException("File name must be <= 20");
 		}
 
-		// Get free byte position in directory
-		ArrayList<Integer> newFileInRoot = getFreePosInDirectory(disk, blockNum, blockSize);
-
-		// TODO: Verify file fits into new block;
-
-		// Write file name inside root and assign a free i-node to reference it.
+		// Write file name inside the directory and assign a free i-node to reference it.
 		// Obtain free valid i-node position
 		int iNodePos;
 		try {
 			iNodePos = iNodesManager.getFreeiNode(disk);
-		} catch (Exception e) {
+		} catch (FullDiskException e) {
 			System.out.println(e.getMessage());
-			throw new FullDiskException();  // Could not get more i-node
+			throw e;  // Could not get more i-node
 		}
 
-		// Write file name and node index into root;
-		int newFileBlockNum = newFileInRoot.get(0);
-		int newFileBytePos = newFileInRoot.get(1);
+		// Write file name and node index into the directory
+		try {
+			Directory dir = iNodesManager.getDirectory(disk, dirINode);
+			dir.add(disk, iNodesManager.getFirstDataBlockFromiNode(disk, dirINode), file, iNodePos);
+		} catch (FullDiskException e) {
+			iNodesManager.freeiNode(disk, iNodePos);   // No space for the entry, give back the i-node
+			throw e;
+		}
+		disk.getDentryCache().put(dirINode, file, iNodePos, 0, 0);   // where the Directory put the entry is not known
+		NameFilter filter = disk.getNameFilter(dirINode);
+		if (filter != null) {
+			filter.add(file);
+			if (filter.isFull())   // too many names for its size, build a larger one
+				buildNameFilter(disk, dirINode);
+		}
 
-		VirtualDiskBlock auxVirtualBlock = new VirtualDiskBlock(blockSize); // Auxiliary Virtual Disk Block
-		disk.read(newFileBlockNum, auxVirtualBlock);
+		return iNodePos; // Returns reference to the i-node of the new file.
+	}
+	/**
+	 * Builds the Bloom filter of the names of a directory from its entries, sized
+	 * for twice the names it has.
+	 * @param disk DiskUnit in use.
+	 * @param dirINode Index of the i-node of the directory.
+	 */
+	static void buildNameFilter(DiskUnit disk, int dirINode) {
+		Directory dir = iNodesManager.getDirectory(disk, dirINode);
+		ArrayList<String> files = dir.findByPrefix(disk, iNodesManager.getFirstDataBlockFromiNode(disk, dirINode), "", null);
+		NameFilter filter = new NameFilter(Math.max(MIN_FILTER_NAMES, 2*files.size()));
+		for (String file : files)
+			filter.add(file);
+		disk.setNameFilter(dirINode, filter);
+	}
+	/**
+	 * Removes the entry of a file from a directory, where the kind of directory keeps it.
+	 * The i-node and the blocks of the file are not freed.
+	 * @param disk DiskUnit in use.
+	 * @param file Name of the file, formatted to 20 characters.
+	 * @param dirINode Index of the i-node of the directory.
+	 * @return Index of the i-node of the file, or -1 if it is not in the directory.
+	 */
+	public static int removeFileInDirectory(DiskUnit disk, String file, int dirINode) {
+		Directory dir = iNodesManager.getDirectory(disk, dirINode);
+		int iNodeIndex = dir.remove(disk, iNodesManager.getFirstDataBlockFromiNode(disk, dirINode), file);
+		disk.getDentryCache().putMissing(dirINode, file);
+		return iNodeIndex;
+	}
+	/**
+	 * Writes the file name and i-node reference of a directory entry.
+	 * @param disk DiskUnit in use.
+	 * @param blockNum Number of the directory block of the entry.
+	 * @param bytePos Byte position of the entry in the block.
+	 * @param file Name of the file, 20 characters long.
+	 * @param iNodeIndex Index of the i-node of the file.
+	 */
+	static void writeEntry(DiskUnit disk, int blockNum, int bytePos, String file, int iNodeIndex) {
+		VirtualDiskBlock auxVirtualBlock = DiskUtils.copyBlockToVDB(disk, blockNum); // Auxiliary Virtual Disk Block
 
 		// Write file name inside the block
-		for (int i=0; i<fileCharArray.length; i++) {
-			DiskUtils.copyCharToBlock(auxVirtualBlock, newFileBytePos+i, fileCharArray[i]);
+		for (int i=0; i<file.length(); i++) {
+			DiskUtils.copyCharToBlock(auxVirtualBlock, bytePos+i, file.charAt(i));
 		}
 		// Copy i-node reference into the directory.
-		DiskUtils.copyIntToBlock(auxVirtualBlock, newFileBytePos+20, iNodePos);
+		DiskUtils.copyIntToBlock(auxVirtualBlock, bytePos+20, iNodeIndex);
 
 		// Write the Virtual block back into the disk unit.
-		disk.write(newFileBlockNum, auxVirtualBlock);
-
-		return iNodePos; // Returns reference to the i-node of the new file.
+		disk.write(blockNum, auxVirtualBlock);
 	}
 	/**
-	 * Prints the filename and file size of all the files in a directory 
+	 * Prints the filename and file size of all the files in a directory, followed
+	 * by the number of files.
 	 * @param disk DiskUnit in use
-	 * @param dirBlockNum Number of the first data block of the directory
+	 * @param dirINode Index of the i-node of the directory
 	 */
-	private static void printFilesFromDir(DiskUnit disk, int dirBlockNum) {
+	private static void printFilesFromDir(DiskUnit disk, int dirINode) {
 
-		ArrayList<Integer> dirBlockNums = allFileBlockNums(disk, dirBlockNum);
+		Directory dir = iNodesManager.getDirectory(disk, dirINode);
+		int[] dirBlockNums = dir.getEntryBlocks(disk, iNodesManager.getFirstDataBlockFromiNode(disk, dirINode));
 
-		for (Integer blockNum : dirBlockNums) {		
-			System.out.println("Number of directory block numbers: "+dirBlockNums.size());
+		int numOfFiles = 0;
+		for (int blockNum : dirBlockNums) {		
 			VirtualDiskBlock vdb = DiskUtils.copyBlockToVDB(disk, blockNum);
 			ArrayList<String> files = filesInDirBlock(disk, vdb);
-			System.out.println("Number of Files: " +files.size());
 			for (String fileContent : files) {
 				System.out.println(fileContent);
 			}
+			numOfFiles += files.size();
 		}
+		System.out.println("Number of Files: " +numOfFiles);
 	}
 
 	/**
-	 * Writes the new file inside the specified disk .
-	 * @param disk
-	 * @param firstFB
-	 * @param listOfVDB
+	 * Writes a new file inside the specified disk, streaming its content from a channel:
+	 * its free blocks are taken at once and the content is read in chunks of 
+	 * STREAM_BUFFER_SIZE bytes, each written as soon as it is read, so the memory 
+	 * used does not depend on the size of the file. Its block map is written last.
+	 * @param disk DiskUnit in use.
+	 * @param source Channel from which the content is read.
+	 * @param size Size of the content in bytes.
+	 * @return Returns the root of the block map of the file, to be set in its i-node.
+	 * @throws IOException If the content could not be read.
 	 */
-	private static void addNewFileInDisk(DiskUnit disk, int firstFB, ArrayList<VirtualDiskBlock> listOfVDB) {
+	private static int addNewFileInDisk(DiskUnit disk, ReadableByteChannel source, long size) throws IOException {
+		FileLayout layout = disk.getFileLayout();
+		int blockSize = disk.getBlockSize();
+		int payload = layout.getPayloadSize();
+		if (size < 1) // Nothing 
+			System.out.println("There is nothing in the file!");
+		int numOfBlocks = Math.max(layout.getNumOfBlocks(size), layout.getNumOfBlocks(0)); // A chained file has a block even if it is empty
+
+		int[] fileBlocks;
 		try {
-			if (listOfVDB.size() < 1) { // Nothing 
-				System.out.println("There is nothing in the file!");
-				return;
+			fileBlocks = BlockManager.allocate(disk, numOfBlocks);
+		} catch (FullDiskException e) {
+			System.out.println(e.getMessage());
+			throw new FullDiskException();
+		}
+		try {
+			int chunkBlocks = Math.max(1, STREAM_BUFFER_SIZE / blockSize);   // Blocks written per chunk
+			VirtualDiskBlock[] chunk = new VirtualDiskBlock[chunkBlocks];
+			for (int i=0; i < chunkBlocks; i++)
+				chunk[i] = new VirtualDiskBlock(blockSize);
+			ByteBuffer buffer = ByteBuffer.allocate(chunkBlocks * payload);
+
+			for (int first=0; first < numOfBlocks; first += chunkBlocks) {
+				int count = Math.min(chunkBlocks, numOfBlocks - first);
+				buffer.clear();
+				buffer.limit((int) Math.min(count * payload, size - (long) first * payload)); // Bytes of content in the chunk
+				while (buffer.hasRemaining() && source.read(buffer) >= 0);
+				buffer.flip();
+				for (int i=0; i < count; i++) {
+					byte[] bytes = chunk[i].getBytes();
+					int contentBytes = Math.min(payload, buffer.remaining());
+					buffer.get(bytes, 0, contentBytes);
+					Arrays.fill(bytes, contentBytes, blockSize, (byte) 0);
+					int b = first + i;
+					layout.setNextBlock(chunk[i], (b == numOfBlocks-1) ? 0 : fileBlocks[b+1]);  // Link the block to the next one, if the layout does it
+				}
+				writeBlockRuns(disk, fileBlocks, first, chunk, count);
 			}
-			VirtualDiskBlock vdb = listOfVDB.get(0);  // Get the VirtualDiskBlock from the ArrayList
-			int nextAvailableFreeBlock;  // Holds the next free block to use
-			if (listOfVDB.size() == 1) // Only one virtual block
-				nextAvailableFreeBlock = 0;
-			else
-				nextAvailableFreeBlock = BlockManager.getFreeBlockNumber(disk); // Look for a free block
-			DiskUtils.copyIntToBlock(vdb, vdb.getCapacity()-4, nextAvailableFreeBlock);  // Write free block number into last 4-bytes of block
-			disk.write(firstFB, vdb);   // Write virtual disk block into disk 
-
-			for (int i=1; i<listOfVDB.size(); i++) {
-				int freeBlock = nextAvailableFreeBlock;  // Save the next block, in order to write in that block
-				vdb = listOfVDB.get(i);
-				if (i == listOfVDB.size()-1)
-					nextAvailableFreeBlock = 0;
-				else
-					nextAvailableFreeBlock = BlockManager.getFreeBlockNumber(disk);  // Look for a free block
-				DiskUtils.copyIntToBlock(vdb, vdb.getCapacity()-4, nextAvailableFreeBlock);  // Write free block number into last 4-bytes of block
+			return layout.createMap(disk, fileBlocks);
+		} catch (FullDiskException e) {
+			BlockManager.release(disk, fileBlocks);  // No space for the block map, give back the data blocks
+			System.out.println(e.getMessage());
+			throw new FullDiskException();
+		} catch (IOException e) {
+			BlockManager.release(disk, fileBlocks);
+			throw e;
+		}
+	}
 
-				disk.write(freeBlock, vdb);  // Write virtual disk block into disk 
-			}
+	/**
+	 * Writes a copy of the data blocks of a file inside the specified disk and its
+	 * block map, telling why if there is no space for it.
+	 * @param disk DiskUnit in use.
+	 * @param sourceBlocks Numbers of the data blocks of the file copied, in order.
+	 * @return Returns the root of the block map of the copy, to be set in its i-node.
+	 */
+	private static int copyBlocksInDisk(DiskUnit disk, int[] sourceBlocks) {
+		try {
+			return copyBlocks(disk, sourceBlocks);
 		} catch (FullDiskException e) {
 			System.out.println(e.getMessage());
 			throw new FullDiskException();
 		}
+	}
 
+	/**
+	 * Writes a copy of the data blocks of a file inside the specified disk and its
+	 * block map. The new blocks are taken at once and the copy is pipelined: a
+	 * reader thread reads the source in chunks of STREAM_BUFFER_SIZE bytes, every
+	 * run of consecutive blocks with a single transfer, up to READ_AHEAD_CHUNKS 
+	 * chunks ahead of this thread, which writes each chunk as it arrives. If the
+	 * copy fails the reader is stopped and the new blocks are given back.
+	 * @param disk DiskUnit in use.
+	 * @param sourceBlocks Numbers of the data blocks of the file copied, in order.
+	 * @return Returns the root of the block map of the copy, to be set in its i-node.
+	 * @throws FullDiskException If there is no space for the copy, which takes no block then.
+	 */
+	static int copyBlocks(DiskUnit disk, int[] sourceBlocks) throws FullDiskException {
+		FileLayout layout = disk.getFileLayout();
+		int numOfBlocks = sourceBlocks.length;
+		int[] fileBlocks = BlockManager.allocate(disk, numOfBlocks);
+
+		int chunkBlocks = Math.max(1, STREAM_BUFFER_SIZE / disk.getBlockSize());   // Blocks copied per chunk
+		BlockingQueue<VirtualDiskBlock[]> emptyChunks = new ArrayBlockingQueue<>(READ_AHEAD_CHUNKS + 1);
+		BlockingQueue<VirtualDiskBlock[]> fullChunks = new ArrayBlockingQueue<>(READ_AHEAD_CHUNKS + 1);
+		for (int c=0; c <= READ_AHEAD_CHUNKS; c++) {
+			VirtualDiskBlock[] chunk = new VirtualDiskBlock[Math.min(chunkBlocks, numOfBlocks)];
+			for (int i=0; i < chunk.length; i++)
+				chunk[i] = new VirtualDiskBlock(disk.getBlockSize());
+			emptyChunks.add(chunk);
+		}
+		ChunkReader reader = new ChunkReader(disk, sourceBlocks, chunkBlocks, emptyChunks, fullChunks);
+		reader.start();
 
+		boolean copied = false;
+		try {
+			for (int first=0; first < numOfBlocks; first += chunkBlocks) {
+				VirtualDiskBlock[] chunk = fullChunks.take();
+				if (reader.failure != null)
+					throw new RuntimeException("Unable to copy file.", reader.failure);
+				int count = Math.min(chunkBlocks, numOfBlocks - first);
+				for (int i=0; i < count; i++) {
+					int b = first + i;
+					layout.setNextBlock(chunk[i], (b == numOfBlocks-1) ? 0 : fileBlocks[b+1]);  // Link the block to the next one, if the layout does it
+				}
+				writeBlockRuns(disk, fileBlocks, first, chunk, count);
+				emptyChunks.put(chunk);
+			}
+			reader.join();
+			int root = layout.createMap(disk, fileBlocks);
+			copied = true;
+			return root;
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new RuntimeException("Unable to copy file.", e);
+		} finally {
+			if (!copied) {
+				reader.stopReading();
+				BlockManager.release(disk, fileBlocks);  // The copy failed, give back the data blocks
+			}
+		}
+	}
 
+	/**
+	 * Writes a block map for a new file that shares the data blocks of another one,
+	 * adding a reference to each of them.
+	 * @param disk DiskUnit in use.
+	 * @param sourceBlocks Numbers of the data blocks of the file shared, in order.
+	 * @return Returns the root of the block map of the new file, to be set in its i-node.
+	 */
+	private static int linkBlocksInDisk(DiskUnit disk, int[] sourceBlocks) {
+		try {
+			int root = disk.getFileLayout().createMap(disk, sourceBlocks);
+			BlockManager.share(disk, sourceBlocks);
+			return root;
+		} catch (FullDiskException e) {
+			System.out.println(e.getMessage());
+			throw new FullDiskException();
+		}
 	}
+
 	/**
-	 * Deletes a file from the disk by wiping its data blocks.
-	 * @param d DiskUnit in use
-	 * @param firstFreeBlock Number of the first data block in the file.
+	 * Thread that reads the data blocks of a file, a chunk at a time, into the 
+	 * chunks taken from a queue of empty ones, and hands them in order to the 
+	 * thread that writes them through a queue of full ones.
 	 */
-	private static void deleteFileAtDisk(DiskUnit d, int firstFreeBlock) {
+	private static class ChunkReader extends Thread {
+
+		private DiskUnit disk;
+		private int[] sourceBlocks;
+		private int chunkBlocks;
+		private BlockingQueue<VirtualDiskBlock[]> emptyChunks;
+		private BlockingQueue<VirtualDiskBlock[]> fullChunks;
+		private volatile Exception failure;   // Why the reading stopped, null if it did not fail
+		private volatile boolean stopped;     // Set when the writer gives up the copy
+
+		private ChunkReader(DiskUnit disk, int[] sourceBlocks, int chunkBlocks, 
+				BlockingQueue<VirtualDiskBlock[]> emptyChunks, BlockingQueue<VirtualDiskBlock[]> fullChunks) {
+			this.disk = disk;
+			this.sourceBlocks = sourceBlocks;
+			this.chunkBlocks = chunkBlocks;
+			this.emptyChunks = emptyChunks;
+			this.fullChunks = fullChunks;
+			setDaemon(true);
+		}
 
-		ArrayList<Integer> fileBlockNums = allFileBlockNums(d, firstFreeBlock);
+		@Override
+		public void run() {
+			try {
+				for (int first=0; first < sourceBlocks.length && !stopped; first += chunkBlocks) {
+					VirtualDiskBlock[] chunk = emptyChunks.take();
+					if (stopped)
+						return;
+					try {
+						readBlockRuns(disk, sourceBlocks, first, chunk, Math.min(chunkBlocks, sourceBlocks.length - first));
+					} catch (RuntimeException e) {
+						failure = e;
+					}
+					fullChunks.put(chunk);   // Handed even on failure, so the writer does not wait forever
+					if (failure != null)
+						return;
+				}
+			} catch (InterruptedException e) {
+				failure = e;
+			}
+		}
 
-		for (int i=0; i<fileBlockNums.size(); i++) {
-			int blockNum = fileBlockNums.get(i);
-			VirtualDiskBlock vdb = DiskUtils.copyBlockToVDB(d, blockNum);
-			clearDiskBlock(d, blockNum, vdb);         // Clear the block
-			if (i != 0) // Doesn't register the firstFreeBlock into free blocks
-				BlockManager.registerFB(d, blockNum); // register free block to the free block collection.
+		/**
+		 * Stops the reading after the chunk being read, if any, and waits for it. 
+		 * The thread is not interrupted, since that would close the channel of the 
+		 * disk while a block is transferred; an empty chunk wakes it up instead if
+		 * it is waiting for one.
+		 */
+		private void stopReading() {
+			stopped = true;
+			emptyChunks.offer(new VirtualDiskBlock[0]);
+			try {
+				join();
+			} catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+			}
 		}
 	}
+
 	/**
-	 * Clears a block by setting all its bytes to zero.
-	 * @param disk
-	 * @param blockNum
-	 * @param vdb
+	 * Reads blocks of a file from the disk, every run of consecutive block numbers
+	 * with a single transfer.
+	 * @param disk DiskUnit in use.
+	 * @param fileBlocks Numbers of the data blocks of the file.
+	 * @param first Index in fileBlocks of the block read into vdbs[0].
+	 * @param vdbs Blocks where the content is copied.
+	 * @param count Number of blocks to read.
 	 */
-	private static void clearDiskBlock(DiskUnit disk, int blockNum, VirtualDiskBlock vdb) {
-
-		for (int i=0; i<vdb.getCapacity(); i++) {
-			vdb.setElement(i, (byte) 0); // set every byte to 0 (empty) in the block
+	static void readBlockRuns(DiskUnit disk, int[] fileBlocks, int first, VirtualDiskBlock[] vdbs, int count) {
+		int runStart = 0;
+		for (int i=1; i<=count; i++) {
+			if (i == count || fileBlocks[first+i] != fileBlocks[first+i-1]+1) {
+				if (i - runStart == 1)
+					disk.read(fileBlocks[first+runStart], vdbs[runStart]);
+				else
+					disk.readBlocks(fileBlocks[first+runStart], Arrays.copyOfRange(vdbs, runStart, i));
+				runStart = i;
+			}
 		}
-		disk.write(blockNum, vdb); // Write the emptied block into the disk.
+	}
 
+	/**
+	 * Writes blocks of a file into the disk, every run of consecutive block numbers
+	 * with a single transfer.
+	 * @param disk DiskUnit in use.
+	 * @param fileBlocks Numbers of the data blocks of the file.
+	 * @param first Index in fileBlocks of the block of vdbs[0].
+	 * @param vdbs Blocks to write.
+	 * @param count Number of blocks of vdbs to write.
+	 */
+	static void writeBlockRuns(DiskUnit disk, int[] fileBlocks, int first, VirtualDiskBlock[] vdbs, int count) {
+		int runStart = 0;
+		for (int i=1; i<=count; i++) {
+			if (i == count || fileBlocks[first+i] != fileBlocks[first+i-1]+1) {
+				if (i - runStart == 1)
+					disk.write(fileBlocks[first+runStart], vdbs[runStart]);
+				else
+					disk.writeBlocks(fileBlocks[first+runStart], Arrays.copyOfRange(vdbs, runStart, i));
+				runStart = i;
+			}
+		}
 	}
+
 	/**
-	 * Method returns the largest possible file size
-	 * @param disk The disk itself to be analyzed
-	 * @return Returns the largest possible file given the properties of the disk
+	 * Deletes a file from the disk by discarding and freeing its data blocks and 
+	 * the blocks of its block map. Data blocks shared with other files are kept.
+	 * @param d DiskUnit in use
+	 * @param firstFreeBlock Root of the block map of the file, kept in its i-node.
+	 * @param size Size of the file in bytes.
 	 */
-	private static int getMaxFileSizeFromDisk(DiskUnit disk){
-		int N = disk.getBlockSize(); // Where N is the BlockSize 
-		int maxFileSize = (N-20) + 3*N + (N/4)*N + (N/4)*(N/4)*N ;
-		return maxFileSize;
+	static void deleteFileAtDisk(DiskUnit d, int firstFreeBlock, long size) {
+
+		FileLayout layout = d.getFileLayout();
+		int[] fileBlocks = layout.deleteMap(d, firstFreeBlock, layout.getNumOfBlocks(size));
+		fileBlocks = BlockManager.dropReferences(d, fileBlocks);   // Only the blocks no other file shares are freed
+
+		BlockManager.discard(d, fileBlocks);   // The content of the blocks is no longer needed
+		BlockManager.release(d, fileBlocks);   // register the freed blocks to the free block collection.
 	}
 	
 	
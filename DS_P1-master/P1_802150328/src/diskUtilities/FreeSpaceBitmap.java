@@ -0,0 +1,27 @@
+package diskUtilities;
+
+/**
+ * Free-space bitmap of a disk unit formatted with SuperBlock.FREE_SPACE_BITMAP.
+ * The bitmap is stored in the blocks that follow the i-node blocks (and the i-node
+ * bitmap, if any), one bit per disk block, and is kept in memory as a WordBitmap
+ * while the disk is mounted.
+ * @author Francisco Diaz
+ *
+ */
+public class FreeSpaceBitmap extends WordBitmap {
+
+	/**
+	 * Loads the free-space bitmap of a disk into memory.
+	 * @param disk DiskUnit whose bitmap is loaded.
+	 * @param firstBitmapBlock Number of the first block of the bitmap.
+	 * @param numOfBitmapBlocks Number of blocks of the bitmap.
+	 */
+	public FreeSpaceBitmap(DiskUnit disk, int firstBitmapBlock, int numOfBitmapBlocks) {
+		super(disk, disk.getCapacity(), firstBitmapBlock, numOfBitmapBlocks);
+	}
+
+	public int getFreeBlocks() {
+		return getFree();
+	}
+
+}
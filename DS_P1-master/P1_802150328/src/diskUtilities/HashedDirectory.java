@@ -0,0 +1,119 @@
+package diskUtilities;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+
+import diskExceptions.FullDiskException;
+
+/**
+ * Directory whose entries are spread in hash buckets. The root block of the 
+ * directory is a table of blockSize/4 buckets, each the first block of a chain of
+ * directory blocks (0 while the bucket is empty), and the entry of a file is kept
+ * in the bucket given by the hash of its name, so a lookup reads one short chain.
+ * The first time a directory is used after the disk is mounted, a hash map from
+ * name to entry position is built for it in memory, and later lookups and inserts
+ * do not read the directory at all.
+ * @author Francisco Diaz
+ *
+ */
+public class HashedDirectory implements Directory {
+
+	private HashMap<Integer, HashMap<String, int[]>> entries = new HashMap<>();  // Root of a directory -> name -> {block, byte position}
+
+	public void create(DiskUnit d, int root) {
+		d.write(root, new VirtualDiskBlock(d.getBlockSize()));   // every bucket empty
+		entries.put(root, new HashMap<String, int[]>());
+	}
+
+	public ArrayList<Integer> find(DiskUnit d, int root, String name) {
+		int[] pos = getEntries(d, root).get(name);
+		if (pos == null)
+			return null;
+		ArrayList<Integer> foundFileInfo = new ArrayList<>();
+		foundFileInfo.add(pos[0]);   // BlockNum of where the file resides.
+		foundFileInfo.add(pos[1]);   // Byte position in the block.
+		return foundFileInfo;
+	}
+
+	public void add(DiskUnit d, int root, String name, int iNodeIndex) throws FullDiskException {
+		int bucket = bucketOf(d, name);
+		VirtualDiskBlock table = DiskUtils.copyBlockToVDB(d, root);
+		int chain = DiskUtils.getIntFromBlock(table, 4*bucket);
+		if (chain == 0) {   // first entry of the bucket
+			chain = BlockManager.getFreeBlockNumber(d);
+			d.write(chain, new VirtualDiskBlock(d.getBlockSize()));
+			DiskUtils.copyIntToBlock(table, 4*bucket, chain);
+			d.write(root, table);
+		}
+		ArrayList<Integer> freePos = FileLoaderAndManager.getFreePosInDirectory(d, chain, d.getBlockSize());
+		FileLoaderAndManager.writeEntry(d, freePos.get(0), freePos.get(1), name, iNodeIndex);
+		getEntries(d, root).put(name, new int[] {freePos.get(0), freePos.get(1)});
+	}
+
+	/**
+	 * The last entry of the block takes the place of the removed one.
+	 */
+	public int remove(DiskUnit d, int root, String name) {
+		int[] pos = getEntries(d, root).remove(name);
+		if (pos == null)
+			return -1;
+		int iNodeIndex = FileLoaderAndManager.getiNodeInEntry(d, pos[0], pos[1]);
+		String moved = FileLoaderAndManager.removeEntry(d, pos[0], pos[1]);
+		if (moved != null)
+			getEntries(d, root).put(moved, pos);
+		return iNodeIndex;
+	}
+
+	public int[] getEntryBlocks(DiskUnit d, int root) {
+		ArrayList<Integer> blocks = new ArrayList<>();
+		VirtualDiskBlock table = DiskUtils.copyBlockToVDB(d, root);
+		for (int bucket=0; bucket < d.getBlockSize() / 4; bucket++) {
+			int chain = DiskUtils.getIntFromBlock(table, 4*bucket);
+			if (chain != 0)
+				blocks.addAll(FileLoaderAndManager.allFileBlockNums(d, chain));
+		}
+		return ChainedFileLayout.toArray(blocks);
+	}
+
+	/**
+	 * Names in different buckets have no order, so every bucket is read.
+	 */
+	public ArrayList<String> findByPrefix(DiskUnit d, int root, String prefix, ArrayList<Integer> iNodes) {
+		return FileLoaderAndManager.findByPrefixInBlocks(d, getEntryBlocks(d, root), prefix, iNodes);
+	}
+
+	/**
+	 * Bucket of the directory where the entry of a file is kept.
+	 * @param d DiskUnit in use.
+	 * @param name Name of the file, formatted to 20 characters.
+	 * @return Index of the bucket in the table.
+	 */
+	private int bucketOf(DiskUnit d, String name) {
+		return Math.floorMod(name.hashCode(), d.getBlockSize() / 4);
+	}
+
+	/**
+	 * Gets the in-memory map of the entries of a directory, reading every bucket
+	 * of the directory to build it if it is the first time the directory is used.
+	 * @param d DiskUnit in use.
+	 * @param root Root of the directory.
+	 * @return Map from file name to {block, byte position} of its entry.
+	 */
+	private HashMap<String, int[]> getEntries(DiskUnit d, int root) {
+		HashMap<String, int[]> dirEntries = entries.get(root);
+		if (dirEntries != null)
+			return dirEntries;
+		dirEntries = new HashMap<>();
+		for (int blockNum : getEntryBlocks(d, root)) {
+			VirtualDiskBlock vdb = DiskUtils.copyBlockToVDB(d, blockNum);
+			for (int bytePos=0; bytePos + 24 <= d.getBlockSize() - 4; bytePos += 24) {
+				if (DiskUtils.getIntFromBlock(vdb, bytePos+20) == 0)   // no more entries in the block
+					break;
+				dirEntries.put(FileLoaderAndManager.getNameInEntry(vdb, bytePos), new int[] {blockNum, bytePos});
+			}
+		}
+		entries.put(root, dirEntries);
+		return dirEntries;
+	}
+
+}
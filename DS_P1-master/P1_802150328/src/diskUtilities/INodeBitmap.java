@@ -0,0 +1,32 @@
+package diskUtilities;
+
+/**
+ * Bitmap of the i-nodes in use of a mounted disk. A disk formatted with
+ * SuperBlock.I_NODE_BITMAP stores it in the blocks that follow the i-node blocks,
+ * one bit per i-node, and it is written back when the disk is synced. For other
+ * disks it is built in memory when the disk is mounted, from the i-nodes referenced
+ * by the root directory, and is not stored. While the disk is mounted it is kept as
+ * a WordBitmap, so that a free i-node is found by scanning words instead of
+ * following the list of free i-nodes through the i-node blocks.
+ * @author Francisco Diaz
+ *
+ */
+public class INodeBitmap extends WordBitmap {
+
+	/**
+	 * Loads the i-node bitmap of a disk into memory.
+	 * @param disk DiskUnit whose bitmap is loaded.
+	 * @param numOfINodes Number of i-nodes of the disk.
+	 * @param firstBitmapBlock Number of the first block of the bitmap.
+	 * @param numOfBitmapBlocks Number of blocks of the bitmap, 0 for a bitmap that
+	 * is not stored in the disk (every i-node starts free).
+	 */
+	public INodeBitmap(DiskUnit disk, int numOfINodes, int firstBitmapBlock, int numOfBitmapBlocks) {
+		super(disk, numOfINodes, firstBitmapBlock, numOfBitmapBlocks);
+	}
+
+	public int getFreeINodes() {
+		return getFree();
+	}
+
+}
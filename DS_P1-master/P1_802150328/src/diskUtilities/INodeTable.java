@@ -0,0 +1,218 @@
+package diskUtilities;
+
+import java.util.BitSet;
+
+/**
+ * I-nodes of a mounted disk, kept in memory. The i-node blocks are read once,
+ * when the disk is mounted, into one array per field of the i-node, so reading
+ * or changing an i-node does not read or write any disk block. The i-node blocks
+ * that changed are written back when the disk is synced, each block once,
+ * however many of its i-nodes changed.
+ * The format of the i-nodes is given by the i-node version of the disk. A version 1
+ * i-node takes 9 bytes: the root of the block map of the file (4 bytes), the size
+ * of the file (4 bytes) and its type (1 byte). A version 2 i-node takes 32 bytes,
+ * so that no i-node crosses a block: the root (4 bytes), the type (1 byte), 3 unused
+ * bytes, the size (8 bytes), 8 bytes kept for later use, the last data block of the
+ * file (4 bytes, 0 if it is not known) and 4 more bytes kept for later use. Block 1
+ * holds the first blockSize/size i-nodes, block 2 the next ones, and so on. The size
+ * of a version 1 i-node is an int, so its files can not reach 2 GB; version 2 
+ * i-nodes have no such limit.
+ * The last data block lets a file grow without going through its block map; how
+ * much of that block is in use follows from the size. It is forgotten whenever the
+ * root of the block map is set, since the file may have new blocks then. Version 1
+ * i-nodes have no room for it and keep it only while the disk is mounted.
+ * @author Francisco Diaz
+ *
+ */
+public class INodeTable {
+
+	public static final int V1_SIZE = 9;    // Bytes per i-node of version 1
+	public static final int V2_SIZE = 32;   // Bytes per i-node of version 2
+
+	private DiskUnit disk;          // Disk whose i-nodes are kept
+	private int iNodeSize;          // Bytes per i-node
+	private int nodesPerBlock;      // I-nodes in each i-node block
+	private int blockShift;         // log2 of nodesPerBlock when it is a power of 2 (version 2), -1 otherwise
+	private int[] roots;            // Root of the block map (or next free i-node) of each i-node
+	private long[] sizes;           // Size of the file of each i-node
+	private byte[] types;           // Type of each i-node
+	private int[] lastBlocks;       // Last data block of the file of each i-node, 0 if it is not known
+	private BitSet dirtyBlocks;     // Bit b is set if i-node block b+1 changed since the last flush
+
+	/**
+	 * Loads the i-nodes of a disk into memory.
+	 * @param disk DiskUnit whose i-nodes are loaded.
+	 * @param numOfINodes Number of i-nodes of the disk.
+	 * @param version I-node version of the disk, SuperBlock.I_NODES_V1 or SuperBlock.I_NODES_V2.
+	 */
+	public INodeTable(DiskUnit disk, int numOfINodes, int version) {
+		this.disk = disk;
+		int blockSize = disk.getBlockSize();
+		iNodeSize = getINodeSize(version);
+		nodesPerBlock = blockSize / iNodeSize;
+		blockShift = (Integer.bitCount(nodesPerBlock) == 1) ? Integer.numberOfTrailingZeros(nodesPerBlock) : -1;
+		roots = new int[numOfINodes];
+		sizes = new long[numOfINodes];
+		types = new byte[numOfINodes];
+		lastBlocks = new int[numOfINodes];
+		int numOfBlocks = (numOfINodes + nodesPerBlock - 1) / nodesPerBlock;
+		dirtyBlocks = new BitSet(numOfBlocks);
+
+		VirtualDiskBlock vdb = new VirtualDiskBlock(blockSize);
+		for (int b=0; b < numOfBlocks; b++) {
+			disk.read(b + 1, vdb);
+			for (int j=0; j < nodesPerBlock && b*nodesPerBlock + j < numOfINodes; j++)
+				readINode(vdb, j*iNodeSize, b*nodesPerBlock + j);
+		}
+	}
+
+	public int getRoot(int iNodeIndex) {
+		return roots[iNodeIndex];
+	}
+
+	/**
+	 * Sets the root of the block map (or the next free i-node) of an i-node, which
+	 * also forgets the last data block of its file.
+	 * @param iNodeIndex Index of the i-node.
+	 * @param root Root of the block map.
+	 */
+	public void setRoot(int iNodeIndex, int root) {
+		roots[iNodeIndex] = root;
+		lastBlocks[iNodeIndex] = 0;
+		dirtyBlocks.set(blockOf(iNodeIndex));
+	}
+
+	/**
+	 * Gets the last data block of the file of an i-node.
+	 * @param iNodeIndex Index of the i-node.
+	 * @return Number of the block, 0 if it is not known.
+	 */
+	public int getLastBlock(int iNodeIndex) {
+		return lastBlocks[iNodeIndex];
+	}
+
+	public void setLastBlock(int iNodeIndex, int lastBlock) {
+		lastBlocks[iNodeIndex] = lastBlock;
+		if (iNodeSize != V1_SIZE)
+			dirtyBlocks.set(blockOf(iNodeIndex));
+	}
+
+	public long getSize(int iNodeIndex) {
+		return sizes[iNodeIndex];
+	}
+
+	/**
+	 * Sets the size of the file of an i-node.
+	 * @param iNodeIndex Index of the i-node.
+	 * @param size Size of the file in bytes, at most getMaxSize().
+	 */
+	public void setSize(int iNodeIndex, long size) {
+		sizes[iNodeIndex] = size;
+		dirtyBlocks.set(blockOf(iNodeIndex));
+	}
+
+	/**
+	 * Largest size of a file that the i-nodes can keep.
+	 * @return Integer.MAX_VALUE for version 1 i-nodes, Long.MAX_VALUE for version 2.
+	 */
+	public long getMaxSize() {
+		return (iNodeSize == V1_SIZE) ? Integer.MAX_VALUE : Long.MAX_VALUE;
+	}
+
+	public int getType(int iNodeIndex) {
+		return types[iNodeIndex];
+	}
+
+	public void setType(int iNodeIndex, int type) {
+		types[iNodeIndex] = (byte) type;
+		dirtyBlocks.set(blockOf(iNodeIndex));
+	}
+
+	/**
+	 * Bytes that an i-node of a given version takes.
+	 * @param version SuperBlock.I_NODES_V1 or SuperBlock.I_NODES_V2.
+	 * @return Bytes per i-node.
+	 */
+	public static int getINodeSize(int version) {
+		return (version == SuperBlock.I_NODES_V2) ? V2_SIZE : V1_SIZE;
+	}
+
+	/**
+	 * Index, from 0, of the i-node block that holds an i-node.
+	 * @param iNodeIndex Index of the i-node.
+	 * @return Index of the i-node block (disk block index+1).
+	 */
+	private int blockOf(int iNodeIndex) {
+		return (blockShift >= 0) ? iNodeIndex >> blockShift : iNodeIndex / nodesPerBlock;
+	}
+
+	/**
+	 * Copies an i-node from its block into the arrays.
+	 * @param vdb Virtual block of the i-node block.
+	 * @param bytePos Byte position of the i-node in the block.
+	 * @param i Index of the i-node.
+	 */
+	private void readINode(VirtualDiskBlock vdb, int bytePos, int i) {
+		roots[i] = DiskUtils.getIntFromBlock(vdb, bytePos);
+		if (iNodeSize == V1_SIZE) {
+			sizes[i] = DiskUtils.getIntFromBlock(vdb, bytePos + 4);
+			types[i] = vdb.getElement(bytePos + 8);
+		}
+		else {
+			types[i] = vdb.getElement(bytePos + 4);
+			sizes[i] = vdb.asByteBuffer().getLong(bytePos + 8);
+			lastBlocks[i] = DiskUtils.getIntFromBlock(vdb, bytePos + 24);
+		}
+	}
+
+	/**
+	 * Copies an i-node from the arrays into its block.
+	 * @param vdb Virtual block of the i-node block.
+	 * @param bytePos Byte position of the i-node in the block.
+	 * @param i Index of the i-node.
+	 */
+	private void writeINode(VirtualDiskBlock vdb, int bytePos, int i) {
+		DiskUtils.copyIntToBlock(vdb, bytePos, roots[i]);
+		if (iNodeSize == V1_SIZE) {
+			DiskUtils.copyIntToBlock(vdb, bytePos + 4, (int) sizes[i]);
+			vdb.setElement(bytePos + 8, types[i]);
+		}
+		else {
+			vdb.setElement(bytePos + 4, types[i]);
+			vdb.asByteBuffer().putLong(bytePos + 8, sizes[i]);
+			DiskUtils.copyIntToBlock(vdb, bytePos + 24, lastBlocks[i]);
+		}
+	}
+
+	/**
+	 * Number of i-nodes of the disk.
+	 * @return Number of i-nodes.
+	 */
+	public int size() {
+		return roots.length;
+	}
+
+	/**
+	 * Writes back the i-node blocks that changed. The bytes of a block that do
+	 * not belong to any i-node are kept.
+	 */
+	public void flush() {
+		VirtualDiskBlock vdb = new VirtualDiskBlock(disk.getBlockSize());
+		for (int b = dirtyBlocks.nextSetBit(0); b >= 0; b = dirtyBlocks.nextSetBit(b+1)) {
+			disk.read(b + 1, vdb);
+			for (int j=0; j < nodesPerBlock && b*nodesPerBlock + j < roots.length; j++)
+				writeINode(vdb, j*iNodeSize, b*nodesPerBlock + j);
+			disk.write(b + 1, vdb);
+		}
+		dirtyBlocks.clear();
+	}
+
+	/**
+	 * Number of i-node blocks that changed since the last flush.
+	 * @return Number of dirty i-node blocks.
+	 */
+	public int dirtyBlocks() {
+		return dirtyBlocks.cardinality();
+	}
+
+}
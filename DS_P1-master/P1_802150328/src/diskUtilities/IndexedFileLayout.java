@@ -0,0 +1,83 @@
+package diskUtilities;
+
+import diskExceptions.FullDiskException;
+
+/**
+ * Layout in which the i-node of a file points to an index block, with direct
+ * pointers to the first data blocks of the file and pointers to a single indirect
+ * and a double indirect block (see iNodesManager). The block that holds any
+ * position of a file is found with at most three block reads, and data blocks
+ * hold only file content.
+ * @author Francisco Diaz
+ *
+ */
+public class IndexedFileLayout implements FileLayout {
+
+	private int blockSize;   // bytes per block of the disk
+
+	public IndexedFileLayout(int blockSize) {
+		this.blockSize = blockSize;
+	}
+
+	public int getPayloadSize() {
+		return blockSize;
+	}
+
+	public int getNumOfBlocks(long size) {
+		return (int) ((size + blockSize - 1) / blockSize);
+	}
+
+	/**
+	 * Data blocks are not linked, nothing is written into them.
+	 */
+	public void setNextBlock(VirtualDiskBlock vdb, int nextBlock) {
+	}
+
+	public int getBlock(DiskUnit d, int root, int index) {
+		return iNodesManager.getIndexedBlock(d, root, index);
+	}
+
+	public int[] getBlocks(DiskUnit d, int root, int numOfBlocks) {
+		return iNodesManager.getIndexedBlocks(d, root, numOfBlocks);
+	}
+
+	public int[] getBlocks(DiskUnit d, int root, int firstIndex, int numOfBlocks) {
+		return iNodesManager.getIndexedBlocks(d, root, firstIndex, numOfBlocks);
+	}
+
+	public int createMap(DiskUnit d, int[] blocks) throws FullDiskException {
+		return iNodesManager.createIndexedMap(d, blocks);
+	}
+
+	public int addBlock(DiskUnit d, int root, int index, int bn) throws FullDiskException {
+		iNodesManager.setIndexedBlock(d, root, index, bn);
+		return root;
+	}
+
+	/**
+	 * The pointers are set with one write for each block of the map that changes.
+	 */
+	public int addBlocks(DiskUnit d, int root, int index, int last, int[] blocks) throws FullDiskException {
+		iNodesManager.setIndexedBlocks(d, root, index, blocks);
+		return root;
+	}
+
+	/**
+	 * The pointers of the range are already in the map, no block of it is taken.
+	 */
+	public int setBlocks(DiskUnit d, int root, int firstIndex, int[] blocks) throws FullDiskException {
+		iNodesManager.setIndexedBlocks(d, root, firstIndex, blocks);
+		return root;
+	}
+
+	public boolean linksDataBlocks() {
+		return false;
+	}
+
+	public int[] deleteMap(DiskUnit d, int root, int numOfBlocks) {
+		int[] blocks = getBlocks(d, root, numOfBlocks);
+		iNodesManager.deleteIndexedMap(d, root);
+		return blocks;
+	}
+
+}
@@ -0,0 +1,109 @@
+package diskUtilities;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+
+/**
+ * Block device stored in a memory-mapped file. Reads and writes of blocks
+ * are memory copies between the mapping and the virtual disk blocks, each
+ * through its own slice of the mapping, so they take no lock.
+ * @author Francisco Diaz
+ *
+ */
+public class MappedBlockDevice implements BlockDevice {
+
+	private int capacity;          // number of blocks of the device
+	private int blockSize;         // bytes per block
+	private RandomAccessFile file; // the file where all the blocks are stored
+	private MappedByteBuffer map;  // the whole file mapped in memory
+
+	/**
+	 * Maps the file representing a disk as a block device. 
+	 * @param name File representing the disk.
+	 * @param capacity Number of blocks of the disk.
+	 * @param blockSize Bytes per block of the disk.
+	 * @throws IOException If the file could not be mapped.
+	 * @throws IllegalArgumentException If the disk is too large to be mapped.
+	 */
+	public MappedBlockDevice(File name, int capacity, int blockSize) throws IOException {
+		long diskSize = (long) capacity * blockSize;
+		if (diskSize > Integer.MAX_VALUE)
+			throw new IllegalArgumentException("Disk is too large to be mapped: "+diskSize+" bytes.");
+		this.capacity = capacity;
+		this.blockSize = blockSize;
+		file = new RandomAccessFile(name, "rw");
+		map = file.getChannel().map(FileChannel.MapMode.READ_WRITE, 0, diskSize);
+	}
+
+	public int getCapacity() {
+		return capacity;
+	}
+
+	public int getBlockSize() {
+		return blockSize;
+	}
+
+	public void read(int blockNum, VirtualDiskBlock b) {
+		slice(blockNum, 1).get(b.getBytes());
+	}
+
+	public void write(int blockNum, VirtualDiskBlock b) {
+		slice(blockNum, 1).put(b.getBytes());
+	}
+
+	public void readBlocks(int firstBlockNum, VirtualDiskBlock[] blocks) {
+		ByteBuffer run = slice(firstBlockNum, blocks.length);
+		for (VirtualDiskBlock block : blocks)
+			run.get(block.getBytes());
+	}
+
+	public void writeBlocks(int firstBlockNum, VirtualDiskBlock[] blocks) {
+		ByteBuffer run = slice(firstBlockNum, blocks.length);
+		for (VirtualDiskBlock block : blocks)
+			run.put(block.getBytes());
+	}
+
+	/**
+	 * Nothing is done: the mapping covers the whole file, which can not be cut, 
+	 * and the discarded blocks keep their old content.
+	 */
+	public void discard(int firstBlockNum, int numOfBlocks) {
+	}
+
+	/**
+	 * Sets a run of blocks to zero in memory, copying a block of zeros into each one.
+	 */
+	public void zero(int firstBlockNum, int numOfBlocks) {
+		ByteBuffer run = slice(firstBlockNum, numOfBlocks);
+		byte[] zeros = new byte[blockSize];
+		while (run.hasRemaining())
+			run.put(zeros);
+	}
+
+	public void sync() {
+		map.force();
+	}
+
+	public void close() throws IOException {
+		map.force();
+		file.close();
+	}
+
+	/**
+	 * Slice of the mapped file covering a run of consecutive blocks.
+	 * @param firstBlockNum Number of the first block of the run.
+	 * @param numOfBlocks Number of blocks in the run.
+	 * @return ByteBuffer sharing the content of the mapped file.
+	 */
+	private ByteBuffer slice(int firstBlockNum, int numOfBlocks) {
+		ByteBuffer run = map.duplicate();
+		run.position(firstBlockNum * blockSize);
+		run.limit((firstBlockNum + numOfBlocks) * blockSize);
+		return run.slice();
+	}
+
+}
@@ -0,0 +1,97 @@
+package diskUtilities;
+
+/**
+ * Bloom filter of the names of a directory, kept in memory while the disk is
+ * mounted. Every name added sets HASHES bits of the filter, so a name with one
+ * of its bits clear is surely not in the directory and its lookup does not read
+ * the directory; a name with all its bits set may or may not be there. Removed
+ * names cannot be taken out, their bits stay set until the filter is rebuilt.
+ * The filter is sized for a number of names and must be rebuilt, larger, once
+ * more names than that have been added.
+ * @author Francisco Diaz
+ *
+ */
+public class NameFilter {
+
+	private static final int HASHES = 7;          // Bits set by each name
+	private static final int BITS_PER_NAME = 10;  // Bits of the filter per name it is sized for (about 1% false positives)
+
+	private long[] words;       // Bit i of words[k] is bit 64*k+i of the filter
+	private int numOfBits;      // Bits of the filter, a power of 2
+	private int maxNames;       // Names the filter is sized for
+	private int numOfNames;     // Names added to the filter
+
+	/**
+	 * Creates an empty filter.
+	 * @param maxNames Number of names the filter is sized for.
+	 */
+	public NameFilter(int maxNames) {
+		this.maxNames = maxNames;
+		numOfBits = 64;
+		while (numOfBits < maxNames * BITS_PER_NAME)
+			numOfBits *= 2;
+		words = new long[(numOfBits + 63) / 64];
+	}
+
+	/**
+	 * Adds a name to the filter.
+	 * @param name Name of the file, formatted to 20 characters.
+	 */
+	public void add(String name) {
+		int h1 = name.hashCode();
+		int h2 = secondHash(name);
+		for (int i=0; i < HASHES; i++) {
+			int bit = (h1 + i*h2) & (numOfBits-1);
+			words[bit / 64] |= 1L << (bit % 64);
+		}
+		numOfNames++;
+	}
+
+	/**
+	 * Determines if a name may have been added to the filter.
+	 * @param name Name of the file, formatted to 20 characters.
+	 * @return False if the name was surely not added, true if it may have been.
+	 */
+	public boolean mightContain(String name) {
+		int h1 = name.hashCode();
+		int h2 = secondHash(name);
+		for (int i=0; i < HASHES; i++) {
+			int bit = (h1 + i*h2) & (numOfBits-1);
+			if ((words[bit / 64] & (1L << (bit % 64))) == 0)
+				return false;
+		}
+		return true;
+	}
+
+	/**
+	 * Determines if more names than the filter is sized for have been added.
+	 * @return True if the filter should be rebuilt.
+	 */
+	public boolean isFull() {
+		return numOfNames > maxNames;
+	}
+
+	/**
+	 * Hash of a name independent of String.hashCode (FNV-1a), odd so that the
+	 * bits of a name are all different.
+	 * @param name Name of the file.
+	 * @return The hash.
+	 */
+	private static int secondHash(String name) {
+		int hash = 0x811C9DC5;
+		for (int i=0; i < name.length(); i++) {
+			hash ^= name.charAt(i);
+			hash *= 0x01000193;
+		}
+		return hash | 1;
+	}
+
+	public int getMaxNames() {
+		return maxNames;
+	}
+
+	public int getNumOfNames() {
+		return numOfNames;
+	}
+
+}
@@ -0,0 +1,162 @@
+package diskUtilities;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.Arrays;
+
+/**
+ * Block device stored in a random access file. Each block is transferred
+ * with a single positioned read or write on the file's channel, and runs
+ * of blocks with a single positioned transfer of a buffer that covers the
+ * whole run. The position of the channel is never moved, so several threads
+ * may transfer different blocks at once. The file is
+ * sparse: blocks past its end were never written and read as zeros without
+ * touching the file, and a discarded run of blocks that reaches its end is
+ * cut off the file.
+ * @author Francisco Diaz
+ *
+ */
+public class RAFBlockDevice implements BlockDevice {
+
+	private static final int ZERO_RUN = 64;  // blocks of zeros written per transfer
+
+	private int capacity;          // number of blocks of the device
+	private int blockSize;         // bytes per block
+	private RandomAccessFile file; // the file where all the blocks are stored
+	private FileChannel channel;   // channel of the file
+	private volatile long length;  // bytes in the file, the blocks past it read as zeros
+
+	/**
+	 * Opens the file representing a disk as a block device.
+	 * @param name File representing the disk.
+	 * @param capacity Number of blocks of the disk.
+	 * @param blockSize Bytes per block of the disk.
+	 * @throws IOException If the file could not be opened.
+	 */
+	public RAFBlockDevice(File name, int capacity, int blockSize) throws IOException {
+		this.capacity = capacity;
+		this.blockSize = blockSize;
+		file = new RandomAccessFile(name, "rw");
+		channel = file.getChannel();
+		length = file.length();
+	}
+
+	public int getCapacity() {
+		return capacity;
+	}
+
+	public int getBlockSize() {
+		return blockSize;
+	}
+
+	public void read(int blockNum, VirtualDiskBlock b) throws IOException {
+		long bytePos = (long) blockNum * blockSize;
+		ByteBuffer buffer = b.asByteBuffer();
+		if (bytePos >= length) {  // nothing to read from the file
+			Arrays.fill(b.getBytes(), (byte) 0);
+			return;
+		}
+		while (buffer.hasRemaining()) {
+			int n = channel.read(buffer, bytePos);
+			if (n < 0) 
+				break; 
+			bytePos += n;
+		}
+		while (buffer.hasRemaining())   // past the end of the file, the block reads as zeros
+			buffer.put((byte) 0);
+	}
+
+	public void write(int blockNum, VirtualDiskBlock b) throws IOException {
+		long bytePos = (long) blockNum * blockSize;
+		ByteBuffer buffer = b.asByteBuffer();
+		while (buffer.hasRemaining())
+			bytePos += channel.write(buffer, bytePos);
+		grow(bytePos);
+	}
+
+	public void readBlocks(int firstBlockNum, VirtualDiskBlock[] blocks) throws IOException {
+		ByteBuffer run = ByteBuffer.allocate(blocks.length * blockSize);
+		long bytePos = (long) firstBlockNum * blockSize;
+		while (run.hasRemaining()) {
+			int n = channel.read(run, bytePos + run.position());
+			if (n < 0) 
+				break;
+		}
+		run.flip();
+		for (VirtualDiskBlock block : blocks) {
+			byte[] bytes = block.getBytes();
+			int count = Math.min(blockSize, run.remaining());
+			run.get(bytes, 0, count);
+			Arrays.fill(bytes, count, blockSize, (byte) 0);   // past the end of the file, the blocks read as zeros
+		}
+	}
+
+	public void writeBlocks(int firstBlockNum, VirtualDiskBlock[] blocks) throws IOException {
+		ByteBuffer run = ByteBuffer.allocate(blocks.length * blockSize);
+		for (VirtualDiskBlock block : blocks)
+			run.put(block.getBytes());
+		run.flip();
+		long bytePos = (long) firstBlockNum * blockSize;
+		while (run.hasRemaining())
+			bytePos += channel.write(run, bytePos);
+		grow(bytePos);
+	}
+
+	/**
+	 * Discards a run of blocks. If the run reaches the end of the file the file is
+	 * truncated at the first block of the run, and the blocks read as zeros; 
+	 * otherwise nothing is done and they keep their old content.
+	 */
+	public synchronized void discard(int firstBlockNum, int numOfBlocks) throws IOException {
+		long start = (long) firstBlockNum * blockSize;
+		long end = (long) (firstBlockNum + numOfBlocks) * blockSize;
+		if (start < length && end >= length) {
+			channel.truncate(start);
+			length = start;
+		}
+	}
+
+	/**
+	 * Sets a run of blocks to zero. If the run reaches the end of the file the file is
+	 * truncated at its first block; otherwise zeros are written into the blocks of 
+	 * the run that are in the file, a chunk of ZERO_RUN blocks at a time.
+	 */
+	public synchronized void zero(int firstBlockNum, int numOfBlocks) throws IOException {
+		long start = (long) firstBlockNum * blockSize;
+		long end = Math.min((long) (firstBlockNum + numOfBlocks) * blockSize, length);
+		if (start >= end)   // past the end of the file, the blocks read as zeros already
+			return;
+		if (end == length) {
+			channel.truncate(start);
+			length = start;
+			return;
+		}
+		ByteBuffer zeros = ByteBuffer.allocate(ZERO_RUN * blockSize);
+		while (start < end) {
+			zeros.clear();
+			zeros.limit((int) Math.min(zeros.capacity(), end - start));
+			while (zeros.hasRemaining())
+				start += channel.write(zeros, start);
+		}
+	}
+
+	public void sync() throws IOException {
+		channel.force(false);
+	}
+
+	public void close() throws IOException {
+		file.close();
+	}
+
+	/**
+	 * Records that the file reaches at least a given length after a write.
+	 * @param end Byte after the last one written.
+	 */
+	private synchronized void grow(long end) {
+		length = Math.max(length, end);
+	}
+
+}
@@ -0,0 +1,189 @@
+package diskUtilities;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.Arrays;
+import java.util.BitSet;
+
+/**
+ * Block device that keeps all its blocks in the heap. A block that was never
+ * written takes no memory and reads as zeros. The device may be loaded from
+ * the file of a disk unit, in which case sync writes the modified blocks back
+ * into that file; without a file it is a scratch disk whose content is lost 
+ * when it is closed. Reads take no lock; the methods that change which blocks
+ * are stored or modified are synchronized.
+ * @author Francisco Diaz
+ *
+ */
+public class RAMBlockDevice implements BlockDevice {
+
+	private static final int LOAD_RUN = 64;  // blocks read from the backing file per transfer
+
+	private int capacity;      // number of blocks of the device
+	private int blockSize;     // bytes per block
+	private byte[][] blocks;   // content of each block, null if all its bytes are zero
+	private File backingFile;  // file the device was loaded from, null for a scratch disk
+	private BitSet dirty;      // blocks modified since loaded or last synced
+	private boolean discarded; // true if blocks were discarded since loaded or last synced
+
+	/**
+	 * Creates a scratch RAM disk with all its blocks set to zero.
+	 * @param capacity Number of blocks of the disk.
+	 * @param blockSize Bytes per block of the disk.
+	 */
+	public RAMBlockDevice(int capacity, int blockSize) {
+		this.capacity = capacity;
+		this.blockSize = blockSize;
+		blocks = new byte[capacity][];
+		dirty = new BitSet(capacity);
+	}
+
+	/**
+	 * Creates a RAM disk with the content of the file representing a disk.
+	 * @param name File representing the disk.
+	 * @param capacity Number of blocks of the disk.
+	 * @param blockSize Bytes per block of the disk.
+	 * @throws IOException If the file could not be read.
+	 */
+	public RAMBlockDevice(File name, int capacity, int blockSize) throws IOException {
+		this(capacity, blockSize);
+		backingFile = name;
+		RandomAccessFile file = new RandomAccessFile(name, "r");
+		try {
+			FileChannel channel = file.getChannel();
+			ByteBuffer run = ByteBuffer.allocate(LOAD_RUN * blockSize);
+			for (int first=0; first < capacity; first += LOAD_RUN) {
+				run.clear();
+				long bytePos = (long) first * blockSize;
+				while (run.hasRemaining()) {
+					int n = channel.read(run, bytePos + run.position());
+					if (n < 0)
+						break;
+				}
+				run.flip();
+				for (int bn=first; bn < first + LOAD_RUN && bn < capacity && run.remaining() > 0; bn++) {
+					byte[] block = new byte[blockSize];
+					run.get(block, 0, Math.min(blockSize, run.remaining()));
+					if (!isZero(block))
+						blocks[bn] = block;
+				}
+			}
+		} finally {
+			file.close();
+		}
+	}
+
+	public int getCapacity() {
+		return capacity;
+	}
+
+	public int getBlockSize() {
+		return blockSize;
+	}
+
+	public void read(int blockNum, VirtualDiskBlock b) {
+		byte[] block = blocks[blockNum];
+		if (block == null)
+			Arrays.fill(b.getBytes(), (byte) 0);
+		else
+			System.arraycopy(block, 0, b.getBytes(), 0, blockSize);
+	}
+
+	public synchronized void write(int blockNum, VirtualDiskBlock b) {
+		byte[] block = blocks[blockNum];
+		if (block == null) 
+			blocks[blockNum] = block = new byte[blockSize];
+		System.arraycopy(b.getBytes(), 0, block, 0, blockSize);
+		dirty.set(blockNum);
+	}
+
+	public void readBlocks(int firstBlockNum, VirtualDiskBlock[] run) {
+		for (int i=0; i < run.length; i++)
+			read(firstBlockNum + i, run[i]);
+	}
+
+	public void writeBlocks(int firstBlockNum, VirtualDiskBlock[] run) {
+		for (int i=0; i < run.length; i++)
+			write(firstBlockNum + i, run[i]);
+	}
+
+	/**
+	 * Discards a run of blocks by releasing their memory. They are not written
+	 * into the backing file, which is cut after its last non-zero block on sync.
+	 */
+	public synchronized void discard(int firstBlockNum, int numOfBlocks) {
+		for (int bn=firstBlockNum; bn < firstBlockNum + numOfBlocks; bn++)
+			blocks[bn] = null;
+		dirty.clear(firstBlockNum, firstBlockNum + numOfBlocks);
+		discarded = true;
+	}
+
+	/**
+	 * Sets a run of blocks to zero by releasing their memory. They are marked as
+	 * modified, so sync writes zeros into the backing file for those that are not
+	 * cut off it.
+	 */
+	public synchronized void zero(int firstBlockNum, int numOfBlocks) {
+		for (int bn=firstBlockNum; bn < firstBlockNum + numOfBlocks; bn++)
+			blocks[bn] = null;
+		dirty.set(firstBlockNum, firstBlockNum + numOfBlocks);
+		discarded = true;
+	}
+
+	/**
+	 * Writes the blocks modified since the last sync into the backing file.
+	 * If blocks were discarded or set to zero, the zero blocks at the end of the 
+	 * file are cut off. A scratch disk has nothing to write.
+	 */
+	public synchronized void sync() throws IOException {
+		if (backingFile == null || (dirty.isEmpty() && !discarded))
+			return;
+		RandomAccessFile file = new RandomAccessFile(backingFile, "rw");
+		try {
+			FileChannel channel = file.getChannel();
+			int last = capacity-1;   // last block that is not zero
+			if (discarded)
+				while (last >= 0 && blocks[last] == null)
+					last--;
+			byte[] zeros = new byte[blockSize];
+			for (int bn = dirty.nextSetBit(0); bn >= 0 && bn <= last; bn = dirty.nextSetBit(bn+1)) {
+				ByteBuffer buffer = ByteBuffer.wrap(blocks[bn] == null ? zeros : blocks[bn]);
+				long bytePos = (long) bn * blockSize;
+				while (buffer.hasRemaining())
+					bytePos += channel.write(buffer, bytePos);
+			}
+			if (discarded && channel.size() > (long) (last+1) * blockSize)
+				channel.truncate((long) (last+1) * blockSize);
+			channel.force(false);
+		} finally {
+			file.close();
+		}
+		dirty.clear();
+		discarded = false;
+	}
+
+	/**
+	 * Releases the memory of the device. The changes made to a device loaded
+	 * from a file are written back into it first.
+	 */
+	public void close() throws IOException {
+		sync();
+		blocks = null;
+	}
+
+	/**
+	 * Tells if every byte of a block is zero.
+	 * @param block Content of a block.
+	 * @return true if the block has no byte different from zero.
+	 */
+	private static boolean isZero(byte[] block) {
+		for (byte element : block)
+			if (element != 0)
+				return false;
+		return true;
+	}
+
+}
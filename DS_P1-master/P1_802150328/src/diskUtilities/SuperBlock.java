@@ -0,0 +1,229 @@
+package diskUtilities;
+
+import java.io.IOException;
+
+/**
+ * In-memory copy of the control data stored at the beginning of block 0 of a
+ * disk unit (the superblock). The mounted disk unit reads and updates the header
+ * through this object, and the values are written back to the disk according
+ * to the flush policy: immediately on every update (WRITE_THROUGH) or only
+ * when the disk is synced or shutdown (WRITE_BACK).
+ * @author Francisco Diaz
+ *
+ */
+public class SuperBlock {
+
+	public static final int WRITE_BACK = 0;    // Header is written on sync or shutdown only
+	public static final int WRITE_THROUGH = 1; // Header is written every time a value changes
+
+	public static final int SIZE = 32;  // Bytes of block 0 used by the header
+
+	// Format flags, kept in the header, that select the on-disk structures of the disk
+	public static final int FREE_SPACE_BITMAP = 1;  // Free blocks are kept in a bitmap instead of the linked tree
+	public static final int EXTENT_FILES = 2;       // Data files are described by extents instead of chained blocks
+	public static final int INDEXED_FILES = 4;      // Data files are described by an index block with direct and indirect pointers
+	public static final int SHARED_BLOCKS = 8;      // Some data blocks are shared by several files (see BlockReferences)
+	public static final int HASHED_DIRS = 16;       // Directories are created hashed instead of chained
+	public static final int BTREE_DIRS = 32;        // Directories are created as B+-trees instead of chained
+	public static final int I_NODE_BITMAP = 64;     // I-nodes in use are kept in a bitmap after the i-node blocks (see INodeBitmap)
+
+	// Version of the i-nodes of the disk, kept in the high byte of the format flags (0 is read as version 1)
+	public static final int I_NODE_VERSION_SHIFT = 24;
+	public static final int I_NODES_V1 = 1;   // 9-byte i-nodes with an int size (see INodeTable)
+	public static final int I_NODES_V2 = 2;   // 32-byte aligned i-nodes with a long size
+
+	private int capacity;       // number of blocks of the disk
+	private int blockSize;      // size of each block of the disk
+	private int firstDataBlock; // index of the first free data block (the root of free block collection)
+	private int nextFreeBlock;  // index representing top 4 bytes position in block firstFLB
+	private int firstFreeINode; // index of first free i-node
+	private int iNodeNum;       // total number of i-nodes in the disk (free + taken)
+	private int formatFlags;    // format flags of the disk (0 for the original format)
+	private int highWaterMark;  // blocks from this one on were never used, 0 if every free block is in the free block collection
+
+	private BlockDevice device;  // device where block 0 of the disk is stored
+	private boolean dirty;       // true if the values in memory differ from those in the disk
+	private int flushPolicy;     // WRITE_BACK or WRITE_THROUGH
+
+	/**
+	 * Creates a superblock with the values read from the header of a disk.
+	 * @param device Device where the blocks of the disk are stored.
+	 * @param flushPolicy WRITE_BACK or WRITE_THROUGH
+	 * @throws IOException If the header could not be read.
+	 */
+	public SuperBlock(BlockDevice device, int flushPolicy) throws IOException {
+		VirtualDiskBlock header = new VirtualDiskBlock(device.getBlockSize());
+		device.read(0, header);
+		capacity = DiskUtils.getIntFromBlock(header, 0);
+		blockSize = DiskUtils.getIntFromBlock(header, 4);
+		firstDataBlock = DiskUtils.getIntFromBlock(header, 8);
+		nextFreeBlock = DiskUtils.getIntFromBlock(header, 12);
+		firstFreeINode = DiskUtils.getIntFromBlock(header, 16);
+		iNodeNum = DiskUtils.getIntFromBlock(header, 20);
+		formatFlags = DiskUtils.getIntFromBlock(header, 24);
+		highWaterMark = DiskUtils.getIntFromBlock(header, 28);
+		this.device = device;
+		this.flushPolicy = flushPolicy;
+		dirty = false;
+	}
+
+	/**
+	 * Writes the header into block 0 if it was modified since it was read or last flushed.
+	 * @throws IOException If the header could not be written.
+	 */
+	public void flush() throws IOException {
+		if (!dirty)
+			return;
+		VirtualDiskBlock header = new VirtualDiskBlock(blockSize);
+		device.read(0, header);   // keep the rest of block 0 as it is
+		DiskUtils.copyIntToBlock(header, 0, capacity);
+		DiskUtils.copyIntToBlock(header, 4, blockSize);
+		DiskUtils.copyIntToBlock(header, 8, firstDataBlock);
+		DiskUtils.copyIntToBlock(header, 12, nextFreeBlock);
+		DiskUtils.copyIntToBlock(header, 16, firstFreeINode);
+		DiskUtils.copyIntToBlock(header, 20, iNodeNum);
+		DiskUtils.copyIntToBlock(header, 24, formatFlags);
+		DiskUtils.copyIntToBlock(header, 28, highWaterMark);
+		device.write(0, header);
+		dirty = false;
+	}
+
+	/**
+	 * Marks the header as modified. With the WRITE_THROUGH policy the header
+	 * is written right away.
+	 * @throws IOException If the header could not be written.
+	 */
+	private void modified() throws IOException {
+		dirty = true;
+		if (flushPolicy == WRITE_THROUGH)
+			flush();
+	}
+
+	public boolean isDirty() {
+		return dirty;
+	}
+
+	public int getFlushPolicy() {
+		return flushPolicy;
+	}
+
+	public void setFlushPolicy(int flushPolicy) {
+		this.flushPolicy = flushPolicy;
+	}
+
+	public int getCapacity() {
+		return capacity;
+	}
+
+	public int getBlockSize() {
+		return blockSize;
+	}
+
+	public int getFirstDataBlock() {
+		return firstDataBlock;
+	}
+
+	public void setFirstDataBlock(int firstDataBlock) throws IOException {
+		this.firstDataBlock = firstDataBlock;
+		modified();
+	}
+
+	public int getNextFreeBlock() {
+		return nextFreeBlock;
+	}
+
+	public void setNextFreeBlock(int nextFreeBlock) throws IOException {
+		this.nextFreeBlock = nextFreeBlock;
+		modified();
+	}
+
+	public int getFirstFreeINode() {
+		return firstFreeINode;
+	}
+
+	/**
+	 * Sets the root of the collection of free blocks and its index with a single
+	 * update of the header.
+	 * @param firstDataBlock New root of the collection of free blocks.
+	 * @param nextFreeBlock New index of the top free block number in the root.
+	 * @throws IOException If the header could not be written.
+	 */
+	public void setFreeBlockRoot(int firstDataBlock, int nextFreeBlock) throws IOException {
+		setFreeBlockRoot(firstDataBlock, nextFreeBlock, highWaterMark);
+	}
+
+	/**
+	 * Sets the root of the collection of free blocks, its index and the high-water
+	 * mark with a single update of the header.
+	 * @param firstDataBlock New root of the collection of free blocks.
+	 * @param nextFreeBlock New index of the top free block number in the root.
+	 * @param highWaterMark New first block that was never used.
+	 * @throws IOException If the header could not be written.
+	 */
+	public void setFreeBlockRoot(int firstDataBlock, int nextFreeBlock, int highWaterMark) throws IOException {
+		this.firstDataBlock = firstDataBlock;
+		this.nextFreeBlock = nextFreeBlock;
+		this.highWaterMark = highWaterMark;
+		modified();
+	}
+
+	public int getHighWaterMark() {
+		return highWaterMark;
+	}
+
+	public void setFirstFreeINode(int firstFreeINode) throws IOException {
+		this.firstFreeINode = firstFreeINode;
+		modified();
+	}
+
+	public int getiNodeNum() {
+		return iNodeNum;
+	}
+
+	public int getFormatFlags() {
+		return formatFlags;
+	}
+
+	/**
+	 * Sets or clears a format flag. Only flags that describe the content of the 
+	 * disk, not its structures, may change after it is created.
+	 * @param flag One of the format flags.
+	 * @param value True to set the flag, false to clear it.
+	 * @throws IOException If the header could not be written.
+	 */
+	public void setFormatFlag(int flag, boolean value) throws IOException {
+		int newFlags = value ? (formatFlags | flag) : (formatFlags & ~flag);
+		if (newFlags == formatFlags)
+			return;
+		formatFlags = newFlags;
+		modified();
+	}
+
+	/**
+	 * Gets the version of the i-nodes of the disk.
+	 * @return I_NODES_V1 or I_NODES_V2.
+	 */
+	public int getINodeVersion() {
+		return getINodeVersion(formatFlags);
+	}
+
+	/**
+	 * Gets the version of the i-nodes given by some format flags.
+	 * @param formatFlags Format flags of a disk.
+	 * @return I_NODES_V1 or I_NODES_V2.
+	 */
+	public static int getINodeVersion(int formatFlags) {
+		int version = formatFlags >>> I_NODE_VERSION_SHIFT;
+		return (version == 0) ? I_NODES_V1 : version;
+	}
+
+	/**
+	 * Determines if the disk was formatted with the given format flag.
+	 * @param flag One of the format flags.
+	 * @return True if the flag is set.
+	 */
+	public boolean hasFormatFlag(int flag) {
+		return (formatFlags & flag) != 0;
+	}
+
+}
@@ -1,5 +1,7 @@
 package diskUtilities;
 
+import java.nio.ByteBuffer;
+
 import diskExceptions.*;
 
 public class VirtualDiskBlock {
@@ -65,6 +67,25 @@ public class VirtualDiskBlock {
 		return elements[index];
 	}
 	
+	/**
+	 * Returns the array backing the current block instance. Changes made to 
+	 * the array are seen by the block and vice versa, which allows a disk 
+	 * unit to transfer the whole block in a single operation.
+	 * @return the byte array holding the elements of the block.
+	 */
+	public byte[] getBytes() {
+		return elements;
+	}
+	
+	/**
+	 * Returns a ByteBuffer that wraps the elements of the current block instance.
+	 * The buffer is positioned at 0 and its limit is the capacity of the block.
+	 * @return ByteBuffer view of the block.
+	 */
+	public ByteBuffer asByteBuffer() {
+		return ByteBuffer.wrap(elements);
+	}
+	
 	public int getNumberOfUsedSpaces(){
 		int counter = 0;
 		for(byte element: elements){
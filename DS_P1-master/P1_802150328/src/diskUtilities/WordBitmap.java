@@ -0,0 +1,257 @@
+package diskUtilities;
+
+import java.util.Arrays;
+import java.util.BitSet;
+
+/**
+ * Bitmap of the elements in use of a mounted disk (blocks or i-nodes), stored in a
+ * run of disk blocks, one bit per element (bit j of byte i is element 8*i+j, 1 if the
+ * element is in use). While the disk is mounted the whole bitmap is kept in memory as
+ * an array of longs, so that a free element is found by scanning words instead of
+ * reading disk blocks, and the bitmap blocks that changed are written back when the
+ * disk is synced. A bitmap with no blocks is not stored and starts with every element free.
+ * @author Francisco Diaz
+ *
+ */
+public abstract class WordBitmap {
+
+	private static final long FULL_WORD = -1L;  // 64 elements in use
+
+	private DiskUnit disk;          // Disk in which the bitmap is stored
+	private int firstBitmapBlock;   // Number of the first block of the bitmap in the disk
+	private int numOfBitmapBlocks;  // Number of blocks of the bitmap in the disk, 0 if it is not stored
+	private int numOfBits;          // Number of elements managed
+	private long[] words;           // Bit i of words[k] is 1 if element 64*k+i is in use
+	private BitSet dirtyBlocks;     // Bitmap blocks changed since the last flush
+	private int cursor;             // Word where the search of a free element starts
+	private int free;               // Number of free elements
+
+	/**
+	 * Loads a bitmap into memory.
+	 * @param disk DiskUnit in which the bitmap is stored.
+	 * @param numOfBits Number of elements managed.
+	 * @param firstBitmapBlock Number of the first block of the bitmap.
+	 * @param numOfBitmapBlocks Number of blocks of the bitmap, 0 for a bitmap that
+	 * is not stored in the disk.
+	 */
+	protected WordBitmap(DiskUnit disk, int numOfBits, int firstBitmapBlock, int numOfBitmapBlocks) {
+		this.disk = disk;
+		this.numOfBits = numOfBits;
+		this.firstBitmapBlock = firstBitmapBlock;
+		this.numOfBitmapBlocks = numOfBitmapBlocks;
+		words = new long[(numOfBits + 63) / 64];
+		dirtyBlocks = new BitSet(numOfBitmapBlocks);
+
+		int blockSize = disk.getBlockSize();
+		VirtualDiskBlock vdb = new VirtualDiskBlock(blockSize);
+		for (int b=0; b < numOfBitmapBlocks; b++) {
+			disk.read(firstBitmapBlock + b, vdb);
+			byte[] bytes = vdb.getBytes();
+			for (int i=0; i < blockSize; i++) {
+				int byteIdx = b*blockSize + i;  // byte index inside the whole bitmap
+				if (byteIdx / 8 >= words.length)
+					break;
+				words[byteIdx / 8] |= (bytes[i] & 0xFFL) << (8 * (byteIdx % 8));
+			}
+		}
+		if (numOfBits % 64 != 0)   // bits past the last element are never free
+			words[words.length-1] |= FULL_WORD << (numOfBits % 64);
+
+		for (long word : words)
+			free += Long.bitCount(~word);
+	}
+
+	/**
+	 * Takes the first free element found from the cursor on, scanning a word (64 elements) at a time.
+	 * @return Index of the element taken, or -1 if every element is in use.
+	 */
+	public int allocate() {
+		for (int n=0; n < words.length; n++) {
+			int k = (cursor + n) % words.length;
+			if (words[k] != FULL_WORD) {
+				int i = k*64 + Long.numberOfTrailingZeros(~words[k]);
+				setInUse(i);
+				cursor = k;
+				return i;
+			}
+		}
+		return -1;
+	}
+
+	/**
+	 * Takes n free elements in a single scan from the cursor on, taking every free
+	 * element of a word before moving to the next one, so that they are as close
+	 * to each other as possible.
+	 * @param n Number of elements to take.
+	 * @return Indexes of the elements taken in increasing order, or null if there
+	 * are not n free elements (in which case none is taken).
+	 */
+	public int[] allocate(int n) {
+		if (n > free)
+			return null;
+		int[] taken = new int[n];
+		int count = 0;
+		for (int j=0; count < n; j++) {
+			int k = (cursor + j) % words.length;
+			long freeBits = ~words[k];
+			while (freeBits != 0 && count < n) {
+				int i = k*64 + Long.numberOfTrailingZeros(freeBits);
+				freeBits &= freeBits - 1;   // clear the lowest free bit
+				setInUse(i);
+				taken[count++] = i;
+			}
+			if (count == n)
+				cursor = k;
+		}
+		Arrays.sort(taken);   // the scan may have wrapped around
+		return taken;
+	}
+
+	/**
+	 * Takes a run of consecutive free elements.
+	 * @param length Number of elements of the run.
+	 * @return Index of the first element of the run, or -1 if there is no such run.
+	 */
+	public int allocateRun(int length) {
+		int first = findRun(length);
+		if (first < 0)
+			return -1;
+		for (int i=first; i < first+length; i++)
+			setInUse(i);
+		return first;
+	}
+
+	/**
+	 * Finds the first run of consecutive free elements of the given length. The
+	 * search starts at the cursor, since every word before it is in use, and words
+	 * with every element in use, or every element free, are skipped whole.
+	 * @param length Number of elements of the run.
+	 * @return Index of the first element of the run, or -1 if there is no such run.
+	 */
+	public int findRun(int length) {
+		if (length < 1)
+			return -1;
+		int runStart = -1;
+		int runLength = 0;
+		for (int k=cursor; k < words.length; k++) {
+			long word = words[k];
+			if (word == FULL_WORD) {
+				runLength = 0;
+				continue;
+			}
+			if (word == 0L) {
+				if (runLength == 0)
+					runStart = k*64;
+				runLength += 64;
+				if (runLength >= length)
+					return runStart;
+				continue;
+			}
+			for (int bit=0; bit < 64; bit++) {
+				if ((word & (1L << bit)) != 0)
+					runLength = 0;
+				else {
+					if (runLength == 0)
+						runStart = k*64 + bit;
+					if (++runLength >= length)
+						return runStart;
+				}
+			}
+		}
+		return -1;
+	}
+
+	/**
+	 * Marks an element as free.
+	 * @param i Index of the freed element.
+	 */
+	public void free(int i) {
+		int k = i / 64;
+		long mask = 1L << (i % 64);
+		if ((words[k] & mask) == 0)   // already free
+			return;
+		words[k] &= ~mask;
+		free++;
+		markDirty(i);
+		if (k < cursor)   // keep allocating low indexes first
+			cursor = k;
+	}
+
+	/**
+	 * Marks an element as in use, if it is not already.
+	 * @param i Index of the element.
+	 */
+	public void setInUse(int i) {
+		int k = i / 64;
+		long mask = 1L << (i % 64);
+		if ((words[k] & mask) != 0)
+			return;
+		words[k] |= mask;
+		free--;
+		markDirty(i);
+	}
+
+	/**
+	 * Records that the bitmap block holding the bit of an element changed.
+	 * @param i Index of the element.
+	 */
+	private void markDirty(int i) {
+		if (numOfBitmapBlocks > 0)
+			dirtyBlocks.set((i / 8) / disk.getBlockSize());
+	}
+
+	/**
+	 * Determines if an element is free.
+	 * @param i Index of the element.
+	 * @return True if the element is free.
+	 */
+	public boolean isFree(int i) {
+		return (words[i / 64] & (1L << (i % 64))) == 0;
+	}
+
+	/**
+	 * Number of elements not in use.
+	 * @return Number of free elements.
+	 */
+	protected int getFree() {
+		return free;
+	}
+
+	/**
+	 * Writes into the disk the bitmap blocks changed since the last flush.
+	 * A bitmap that is not stored has nothing to write.
+	 */
+	public void flush() {
+		int blockSize = disk.getBlockSize();
+		VirtualDiskBlock vdb = new VirtualDiskBlock(blockSize);
+		for (int b = dirtyBlocks.nextSetBit(0); b >= 0; b = dirtyBlocks.nextSetBit(b+1)) {
+			disk.read(firstBitmapBlock + b, vdb);   // keep the bytes past the last element
+			byte[] bytes = vdb.getBytes();
+			for (int i=0; i < blockSize; i++) {
+				int byteIdx = b*blockSize + i;
+				if (byteIdx / 8 >= words.length || byteIdx*8 >= numOfBits)
+					break;
+				bytes[i] = (byte) (words[byteIdx / 8] >>> (8 * (byteIdx % 8)));
+			}
+			disk.write(firstBitmapBlock + b, vdb);
+		}
+		dirtyBlocks.clear();
+	}
+
+	/**
+	 * Determines if the bitmap is stored in the disk.
+	 * @return False if it was built when the disk was mounted and is lost when it is turned off.
+	 */
+	public boolean isStored() {
+		return numOfBitmapBlocks > 0;
+	}
+
+	public int getFirstBitmapBlock() {
+		return firstBitmapBlock;
+	}
+
+	public int getNumOfBitmapBlocks() {
+		return numOfBitmapBlocks;
+	}
+
+}
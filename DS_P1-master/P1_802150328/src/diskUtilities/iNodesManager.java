@@ -1,124 +1,510 @@
-package diskUtilities;
-
-import java.util.ArrayList;
-/**
- * Class that manages and has methods related to the iNodes in the disk
- * @author Francisco Diaz
- *
- */
-public class iNodesManager {
-
-	
-	
-	/**
-	 * Gets the first data block from an i-node using its index.
-	 * @param d DiskUnit in use.
-	 * @param iNodeIndex Index of the i-node to get data block number.
-	 * @return Returns the data block from the i-node with index iNodeIndex
-	 */
-	public static int getFirstDataBlockFromiNode(DiskUnit d, int iNodeIndex) {
-		
-		int blockSize = d.getBlockSize();
-		ArrayList<Integer> iNodeInfo = getiNodePosition(iNodeIndex, blockSize);
-		int iNodeBlockNum = iNodeInfo.get(0); // get blockNum of the iNode 
-		int iNodeBytePos = iNodeInfo.get(1);  // get iNode byte position
-		VirtualDiskBlock vdb = new VirtualDiskBlock(blockSize);
-		d.read(iNodeBlockNum, vdb);
-		
-		return DiskUtils.getIntFromBlock(vdb, iNodeBytePos);
-	}
-	
-	/**
-	 * Sets the first data block from an i-node using its index.
-	 * @param d DiskUnit in use
-	 * @param iNodeIndex Index of the i-node to set data block number.
-	 * @param newDataBlock new data block number to set into i-node.
-	 */
-	public static void setDataBlockToINode(DiskUnit d, int iNodeIndex, int newDataBlock) {
-		
-		int blockSize = d.getBlockSize();
-		ArrayList<Integer> iNodeInfo = getiNodePosition(iNodeIndex, blockSize);
-		int iNodeBlockNum = iNodeInfo.get(0); // get blockNum of the iNode 
-		int iNodeBytePos = iNodeInfo.get(1);  // get iNode byte position
-		VirtualDiskBlock vdb = DiskUtils.copyBlockToVDB(d, iNodeBlockNum);
-		
-		DiskUtils.copyIntToBlock(vdb, iNodeBytePos, newDataBlock);
-		d.write(iNodeBlockNum, vdb);
-	}
-	/**
-	 * Returns ArrayList with the block number of where the i-node is stored and
-	 * byte position of where the iNode is in the block.
-	 * @param iNodeIndex Index of the iNode
-	 * @param blockSize Bytes per block
-	 * @return ArrayList with the block number of where the i-node is stored and
-	 * byte position of where the iNode is in the block 
-	 */
-	public static ArrayList<Integer> getiNodePosition(int iNodeIndex, int blockSize) {
-		
-		int nodesPerBlock = blockSize / 9;
-		int blockNumber = (1 + (iNodeIndex / nodesPerBlock)); // block number of where the i-node is stored
-		int iNodeBytePos = ((iNodeIndex % nodesPerBlock) * 9); // byte position of where the iNode is in the block
-		
-		ArrayList<Integer> nodeArray = new ArrayList<>();
-		nodeArray.add(blockNumber);
-		nodeArray.add(iNodeBytePos);
-		
-		return nodeArray;
-	}
-	
-	/**
-	 * Gets the size of a file into its i-node
-	 * @param d DiskUnit in use
-	 * @param iNodeIndex Index of the iNode to modify
-	 * @return Returns size of the file the i-node makes reference to.
-	 */
-	public static int getSizeiNode(DiskUnit d, int iNodeIndex) {
-		
-		int blockSize = d.getBlockSize();
-		ArrayList<Integer> iNodeInfo = getiNodePosition(iNodeIndex, blockSize);
-		int iNodeBlockNum = iNodeInfo.get(0); // get blockNum of the iNode 
-		int iNodeBytePos = iNodeInfo.get(1);  // get iNode byte position
-		VirtualDiskBlock vdb = DiskUtils.copyBlockToVDB(d, iNodeBlockNum);
-		
-		// Get size in the next 4 bytes after the beginning of the i-node byte position
-		return DiskUtils.getIntFromBlock(vdb, iNodeBytePos+4);
-		
-	}
-	/**
-	 * Sets the size of a file into is i-node
-	 * @param d DiskUnit in use
-	 * @param iNodeIndex Index of the INode to modify
-	 * @param sizeValue Size of the file which the i-node makes reference to.
-	 */
-	public static void setSizeOfiNode(DiskUnit d, int iNodeIndex, int sizeValue) {
-		
-		int blockSize = d.getBlockSize();
-		ArrayList<Integer> iNodeInfo = getiNodePosition(iNodeIndex, blockSize);
-		int iNodeBlockNum = iNodeInfo.get(0); // get blockNum of the iNode 
-		int iNodeBytePos = iNodeInfo.get(1);  // get iNode byte position
-		VirtualDiskBlock vdb = DiskUtils.copyBlockToVDB(d, iNodeBlockNum);
-		
-		// Set size in the next 4 bytes after the beginning of the i-node byte position
-		DiskUtils.copyIntToBlock(vdb, iNodeBytePos+4, sizeValue); 
-		d.write(iNodeBlockNum, vdb);  // Write block into disk
-	}
-	
-	/**
-	 * Gets the next free i-node.
-	 * @return Index of the next free i-node
-	 */
-	public static int getFreeiNode(DiskUnit d) throws Exception {
-		int freeiNodePos = d.getFirstFreeINode();  // Get a free i-node index
-		if (freeiNodePos == 0)
-			throw new Exception("No more I-Nodes available");
-		int nextFreeINodeIdx = getFirstDataBlockFromiNode(d, freeiNodePos); 
-		d.setFirstFreeINode(nextFreeINodeIdx); // Set the reference to the next free i-node into the disk (like linked list)	
-		
-		return freeiNodePos;
-	}
-	
-	
-	
-	
-	
-}
+package diskUtilities;
+
+import java.util.ArrayList;
+
+import diskExceptions.FullDiskException;
+/**
+ * Class that manages and has methods related to the iNodes in the disk. The
+ * i-nodes of the mounted disk are read and changed in its INodeTable.
+ * @author Francisco Diaz
+ *
+ */
+public class iNodesManager {
+
+	// Types of i-node, kept in the last byte of the i-node
+	public static final int FILE = 0;                // Data file
+	public static final int CHAINED_DIRECTORY = 1;   // Directory stored by ChainedDirectory
+	public static final int HASHED_DIRECTORY = 2;    // Directory stored by HashedDirectory
+	public static final int BTREE_DIRECTORY = 3;     // Directory stored by BTreeDirectory
+	
+	
+	/**
+	 * Gets the first data block from an i-node using its index.
+	 * @param d DiskUnit in use.
+	 * @param iNodeIndex Index of the i-node to get data block number.
+	 * @return Returns the data block from the i-node with index iNodeIndex
+	 */
+	public static int getFirstDataBlockFromiNode(DiskUnit d, int iNodeIndex) {
+		return d.getINodeTable().getRoot(iNodeIndex);
+	}
+	
+	/**
+	 * Sets the first data block from an i-node using its index.
+	 * @param d DiskUnit in use
+	 * @param iNodeIndex Index of the i-node to set data block number.
+	 * @param newDataBlock new data block number to set into i-node.
+	 */
+	public static void setDataBlockToINode(DiskUnit d, int iNodeIndex, int newDataBlock) {
+		d.getINodeTable().setRoot(iNodeIndex, newDataBlock);
+	}
+	
+	/**
+	 * Gets the last data block of a file, kept in its i-node.
+	 * @param d DiskUnit in use
+	 * @param iNodeIndex Index of the i-node of the file.
+	 * @return Number of the block, 0 if it is not known.
+	 */
+	public static int getLastDataBlockOfiNode(DiskUnit d, int iNodeIndex) {
+		return d.getINodeTable().getLastBlock(iNodeIndex);
+	}
+	
+	/**
+	 * Sets the last data block of a file into its i-node. It must be set after
+	 * the root of its block map, which forgets it.
+	 * @param d DiskUnit in use
+	 * @param iNodeIndex Index of the i-node of the file.
+	 * @param lastDataBlock Number of the last data block of the file.
+	 */
+	public static void setLastDataBlockOfiNode(DiskUnit d, int iNodeIndex, int lastDataBlock) {
+		d.getINodeTable().setLastBlock(iNodeIndex, lastDataBlock);
+	}
+	
+	/**
+	 * Gets the size of a file into its i-node
+	 * @param d DiskUnit in use
+	 * @param iNodeIndex Index of the iNode to modify
+	 * @return Returns size of the file the i-node makes reference to.
+	 */
+	public static long getSizeiNode(DiskUnit d, int iNodeIndex) {
+		return d.getINodeTable().getSize(iNodeIndex);
+	}
+	/**
+	 * Sets the size of a file into is i-node
+	 * @param d DiskUnit in use
+	 * @param iNodeIndex Index of the INode to modify
+	 * @param sizeValue Size of the file which the i-node makes reference to.
+	 */
+	public static void setSizeOfiNode(DiskUnit d, int iNodeIndex, long sizeValue) {
+		d.getINodeTable().setSize(iNodeIndex, sizeValue);
+	}
+	
+	/**
+	 * Gets the largest size of a file of a disk: the size of the disk, or less if
+	 * its i-nodes can not keep it (2 GB - 1 with 9-byte i-nodes).
+	 * @param d DiskUnit in use
+	 * @return Largest size of a file in bytes.
+	 */
+	public static long getMaxFileSize(DiskUnit d) {
+		return Math.min(d.getINodeTable().getMaxSize(), (long) d.getCapacity() * d.getBlockSize());
+	}
+	
+	/*
+	 * Indexed block map. The i-node of a file points to its index block, whose
+	 * first (blockSize/4 - 2) integers are direct pointers to the first data blocks,
+	 * followed by a pointer to a single indirect block (blockSize/4 pointers to data 
+	 * blocks) and a pointer to a double indirect block (blockSize/4 pointers to single
+	 * indirect blocks). A pointer of 0 means that there is no such block.
+	 */
+	
+	/**
+	 * Gets the number of the disk block that holds a block of a file with an indexed block map.
+	 * @param d DiskUnit in use
+	 * @param indexBlock Index block of the file.
+	 * @param blockIndex Index of the block in the file.
+	 * @return Number of the disk block, or 0 if the file has no such block.
+	 */
+	public static int getIndexedBlock(DiskUnit d, int indexBlock, int blockIndex) {
+		int pointers = d.getBlockSize() / 4;   // pointers per block
+		int direct = pointers - 2;             // direct pointers in the index block
+		VirtualDiskBlock vdb = DiskUtils.copyBlockToVDB(d, indexBlock);
+		
+		if (blockIndex < direct)
+			return DiskUtils.getIntFromBlock(vdb, 4*blockIndex);
+		blockIndex -= direct;
+		if (blockIndex < pointers) {   // in the single indirect block
+			int indirect = DiskUtils.getIntFromBlock(vdb, 4*direct);
+			return (indirect == 0) ? 0 : getIntInBlock(d, indirect, blockIndex);
+		}
+		blockIndex -= pointers;
+		if (blockIndex < pointers*pointers) {   // in the double indirect block
+			int doubleIndirect = DiskUtils.getIntFromBlock(vdb, 4*(direct+1));
+			if (doubleIndirect == 0)
+				return 0;
+			int indirect = getIntInBlock(d, doubleIndirect, blockIndex / pointers);
+			return (indirect == 0) ? 0 : getIntInBlock(d, indirect, blockIndex % pointers);
+		}
+		return 0;
+	}
+	
+	/**
+	 * Gets, in order, the disk blocks that hold the first numOfBlocks blocks of a 
+	 * file with an indexed block map, reading each block of the map once.
+	 * @param d DiskUnit in use
+	 * @param indexBlock Index block of the file.
+	 * @param numOfBlocks Number of blocks of the file.
+	 * @return Numbers of the disk blocks.
+	 */
+	public static int[] getIndexedBlocks(DiskUnit d, int indexBlock, int numOfBlocks) {
+		return getIndexedBlocks(d, indexBlock, 0, numOfBlocks);
+	}
+	
+	/**
+	 * Gets, in order, the disk blocks that hold numOfBlocks consecutive blocks of a 
+	 * file with an indexed block map, starting at a given block of the file. The map
+	 * is gone through once from that block on, reading each block of it once.
+	 * @param d DiskUnit in use
+	 * @param indexBlock Index block of the file.
+	 * @param firstIndex Index in the file of the first block.
+	 * @param numOfBlocks Number of blocks.
+	 * @return Numbers of the disk blocks.
+	 */
+	public static int[] getIndexedBlocks(DiskUnit d, int indexBlock, int firstIndex, int numOfBlocks) {
+		int pointers = d.getBlockSize() / 4;
+		int direct = pointers - 2;
+		int[] blocks = new int[numOfBlocks];
+		VirtualDiskBlock vdb = DiskUtils.copyBlockToVDB(d, indexBlock);
+		int taken = 0;
+		
+		for (int i=firstIndex; i < direct && taken < numOfBlocks; i++)
+			blocks[taken++] = DiskUtils.getIntFromBlock(vdb, 4*i);
+		int indirect = DiskUtils.getIntFromBlock(vdb, 4*direct);
+		if (taken < numOfBlocks && firstIndex + taken < direct + pointers && indirect != 0)
+			taken = copyPointers(d, indirect, firstIndex + taken - direct, blocks, taken);
+		int doubleIndirect = DiskUtils.getIntFromBlock(vdb, 4*(direct+1));
+		if (taken < numOfBlocks && firstIndex + taken >= direct + pointers && doubleIndirect != 0) {
+			VirtualDiskBlock dvdb = DiskUtils.copyBlockToVDB(d, doubleIndirect);
+			int first = firstIndex + taken - direct - pointers;   // index under the double indirect block
+			for (int i = first / pointers; i < pointers && taken < numOfBlocks; i++) {
+				indirect = DiskUtils.getIntFromBlock(dvdb, 4*i);
+				if (indirect == 0)
+					break;
+				taken = copyPointers(d, indirect, (i == first / pointers) ? first % pointers : 0, blocks, taken);
+			}
+		}
+		return blocks;
+	}
+	
+	/**
+	 * Sets the disk block that holds a block of a file with an indexed block map,
+	 * taking and initializing the indirect blocks that are missing.
+	 * @param d DiskUnit in use
+	 * @param indexBlock Index block of the file.
+	 * @param blockIndex Index of the block in the file.
+	 * @param blockNum Number of the disk block.
+	 * @throws FullDiskException If there is no space for an indirect block, or the 
+	 * block index is past the largest file the block map can describe.
+	 */
+	public static void setIndexedBlock(DiskUnit d, int indexBlock, int blockIndex, int blockNum) throws FullDiskException {
+		int pointers = d.getBlockSize() / 4;
+		int direct = pointers - 2;
+		
+		if (blockIndex < direct) {
+			setIntInBlock(d, indexBlock, blockIndex, blockNum);
+			return;
+		}
+		blockIndex -= direct;
+		if (blockIndex < pointers) {
+			int indirect = getOrAddIndirectBlock(d, indexBlock, direct);
+			setIntInBlock(d, indirect, blockIndex, blockNum);
+			return;
+		}
+		blockIndex -= pointers;
+		if (blockIndex < pointers*pointers) {
+			int doubleIndirect = getOrAddIndirectBlock(d, indexBlock, direct+1);
+			int indirect = getOrAddIndirectBlock(d, doubleIndirect, blockIndex / pointers);
+			setIntInBlock(d, indirect, blockIndex % pointers, blockNum);
+			return;
+		}
+		throw new FullDiskException("File is too large for the disk.");
+	}
+	
+	/**
+	 * Sets the disk blocks that hold consecutive blocks of a file with an indexed 
+	 * block map, taking the indirect blocks that are missing. Each block of the map 
+	 * that changes is read and written once, however many pointers it gets.
+	 * @param d DiskUnit in use
+	 * @param indexBlock Index block of the file.
+	 * @param firstIndex Index in the file of the first block set.
+	 * @param blocks Numbers of the disk blocks, in order.
+	 * @throws FullDiskException If there is no space for an indirect block, or the 
+	 * blocks go past the largest file the block map can describe.
+	 */
+	public static void setIndexedBlocks(DiskUnit d, int indexBlock, int firstIndex, int[] blocks) throws FullDiskException {
+		int pointers = d.getBlockSize() / 4;
+		int direct = pointers - 2;
+		int n = blocks.length;
+		if (firstIndex + n > direct + pointers + pointers*pointers)
+			throw new FullDiskException("File is too large for the disk.");
+		
+		VirtualDiskBlock index = DiskUtils.copyBlockToVDB(d, indexBlock);
+		int b = 0;   // next data block to place in the map
+		for (; b < n && firstIndex + b < direct; b++)
+			DiskUtils.copyIntToBlock(index, 4*(firstIndex + b), blocks[b]);
+		boolean indexChanged = (b > 0);
+		if (b < n && firstIndex + b < direct + pointers) {   // in the single indirect block
+			int indirect = DiskUtils.getIntFromBlock(index, 4*direct);
+			boolean isNew = (indirect == 0);
+			if (isNew) {
+				indirect = addPointerBlock(d, index, direct);
+				indexChanged = true;
+			}
+			b = setPointers(d, indirect, isNew, firstIndex + b - direct, blocks, b);
+		}
+		if (b < n) {   // in the double indirect block
+			int doubleIndirect = DiskUtils.getIntFromBlock(index, 4*(direct+1));
+			boolean doubleChanged = (doubleIndirect == 0);
+			VirtualDiskBlock dvdb;
+			if (doubleChanged) {
+				doubleIndirect = addPointerBlock(d, index, direct+1);
+				indexChanged = true;
+				dvdb = new VirtualDiskBlock(d.getBlockSize());
+			}
+			else
+				dvdb = DiskUtils.copyBlockToVDB(d, doubleIndirect);
+			while (b < n) {
+				int i = firstIndex + b - direct - pointers;   // index under the double indirect block
+				int indirect = DiskUtils.getIntFromBlock(dvdb, 4*(i / pointers));
+				boolean isNew = (indirect == 0);
+				if (isNew) {
+					indirect = addPointerBlock(d, dvdb, i / pointers);
+					doubleChanged = true;
+				}
+				b = setPointers(d, indirect, isNew, i % pointers, blocks, b);
+			}
+			if (doubleChanged)
+				d.write(doubleIndirect, dvdb);
+		}
+		if (indexChanged)
+			d.write(indexBlock, index);
+	}
+	
+	/**
+	 * Writes the indexed block map of a new file whose data blocks are the given
+	 * ones. The blocks of the map are taken at once and each is written once.
+	 * @param d DiskUnit in use
+	 * @param blocks Numbers of the data blocks of the file, in order.
+	 * @return Number of the index block of the file.
+	 * @throws FullDiskException If there is no space for the block map, or the file
+	 * is larger than the largest file the block map can describe.
+	 */
+	public static int createIndexedMap(DiskUnit d, int[] blocks) throws FullDiskException {
+		int blockSize = d.getBlockSize();
+		int pointers = blockSize / 4;
+		int direct = pointers - 2;
+		int n = blocks.length;
+		if (n > direct + pointers + pointers*pointers)
+			throw new FullDiskException("File is too large for the disk.");
+		
+		// index block, single indirect, double indirect and the indirect blocks under it
+		int inDouble = Math.max(0, n - direct - pointers);   // data blocks under the double indirect block
+		int numOfMapBlocks = 1 + (n > direct ? 1 : 0) + (inDouble > 0 ? 1 + (inDouble + pointers - 1) / pointers : 0);
+		int[] mapBlocks = BlockManager.allocate(d, numOfMapBlocks);
+		int nextMapBlock = 0;
+		
+		VirtualDiskBlock index = new VirtualDiskBlock(blockSize);
+		int indexBlock = mapBlocks[nextMapBlock++];
+		int b = 0;   // next data block to place in the map
+		for (; b < n && b < direct; b++)
+			DiskUtils.copyIntToBlock(index, 4*b, blocks[b]);
+		if (b < n) {
+			int indirect = mapBlocks[nextMapBlock++];
+			DiskUtils.copyIntToBlock(index, 4*direct, indirect);
+			b = writePointers(d, indirect, blocks, b);
+		}
+		if (b < n) {
+			int doubleIndirect = mapBlocks[nextMapBlock++];
+			DiskUtils.copyIntToBlock(index, 4*(direct+1), doubleIndirect);
+			VirtualDiskBlock dvdb = new VirtualDiskBlock(blockSize);
+			for (int i=0; b < n; i++) {
+				int indirect = mapBlocks[nextMapBlock++];
+				DiskUtils.copyIntToBlock(dvdb, 4*i, indirect);
+				b = writePointers(d, indirect, blocks, b);
+			}
+			d.write(doubleIndirect, dvdb);
+		}
+		d.write(indexBlock, index);
+		return indexBlock;
+	}
+	
+	/**
+	 * Frees the blocks of the indexed block map of a file: its index block and the
+	 * indirect blocks it points to.
+	 * @param d DiskUnit in use
+	 * @param indexBlock Index block of the file.
+	 */
+	public static void deleteIndexedMap(DiskUnit d, int indexBlock) {
+		int pointers = d.getBlockSize() / 4;
+		int direct = pointers - 2;
+		ArrayList<Integer> mapBlocks = new ArrayList<>();
+		mapBlocks.add(indexBlock);
+		
+		VirtualDiskBlock vdb = DiskUtils.copyBlockToVDB(d, indexBlock);
+		int indirect = DiskUtils.getIntFromBlock(vdb, 4*direct);
+		if (indirect != 0)
+			mapBlocks.add(indirect);
+		int doubleIndirect = DiskUtils.getIntFromBlock(vdb, 4*(direct+1));
+		if (doubleIndirect != 0) {
+			mapBlocks.add(doubleIndirect);
+			VirtualDiskBlock dvdb = DiskUtils.copyBlockToVDB(d, doubleIndirect);
+			for (int i=0; i < pointers; i++) {
+				indirect = DiskUtils.getIntFromBlock(dvdb, 4*i);
+				if (indirect != 0)
+					mapBlocks.add(indirect);
+			}
+		}
+		int[] blocks = ChainedFileLayout.toArray(mapBlocks);
+		BlockManager.discard(d, blocks);
+		BlockManager.release(d, blocks);
+	}
+	
+	/**
+	 * Gets the pointer stored in an indirect block of a map, adding a new, empty,
+	 * indirect block if there is none.
+	 * @param d DiskUnit in use
+	 * @param blockNum Block of the map holding the pointer.
+	 * @param index Index of the pointer in the block.
+	 * @return Number of the indirect block.
+	 */
+	private static int getOrAddIndirectBlock(DiskUnit d, int blockNum, int index) throws FullDiskException {
+		int indirect = getIntInBlock(d, blockNum, index);
+		if (indirect == 0) {
+			indirect = BlockManager.getFreeBlockNumber(d);
+			d.write(indirect, new VirtualDiskBlock(d.getBlockSize()));
+			setIntInBlock(d, blockNum, index, indirect);
+		}
+		return indirect;
+	}
+	
+	/**
+	 * Takes a new block of a map and sets a pointer to it in the copy of another
+	 * block of the map; the caller writes both.
+	 * @return Number of the new block.
+	 */
+	private static int addPointerBlock(DiskUnit d, VirtualDiskBlock vdb, int index) throws FullDiskException {
+		int blockNum = BlockManager.getFreeBlockNumber(d);
+		DiskUtils.copyIntToBlock(vdb, 4*index, blockNum);
+		return blockNum;
+	}
+	
+	/**
+	 * Sets in an indirect block the pointers to the data blocks from index b on, 
+	 * starting at a given pointer, as many as fit, with a single write.
+	 * @param isNew True if the indirect block was just taken, so it is not read.
+	 * @return Index of the first data block that did not fit.
+	 */
+	private static int setPointers(DiskUnit d, int indirect, boolean isNew, int from, int[] blocks, int b) {
+		VirtualDiskBlock vdb = isNew ? new VirtualDiskBlock(d.getBlockSize()) : DiskUtils.copyBlockToVDB(d, indirect);
+		for (int i=from; i < d.getBlockSize() / 4 && b < blocks.length; i++)
+			DiskUtils.copyIntToBlock(vdb, 4*i, blocks[b++]);
+		d.write(indirect, vdb);
+		return b;
+	}
+	
+	/**
+	 * Copies the pointers of an indirect block into an array, from a given pointer
+	 * up to the end of the block or of the array.
+	 * @return Number of elements of the array that are set.
+	 */
+	private static int copyPointers(DiskUnit d, int indirect, int from, int[] blocks, int taken) {
+		VirtualDiskBlock vdb = DiskUtils.copyBlockToVDB(d, indirect);
+		for (int i=from; i < d.getBlockSize() / 4 && taken < blocks.length; i++)
+			blocks[taken++] = DiskUtils.getIntFromBlock(vdb, 4*i);
+		return taken;
+	}
+	
+	/**
+	 * Writes into an indirect block the pointers to the data blocks from index b on, as many as fit.
+	 * @return Index of the first data block that did not fit.
+	 */
+	private static int writePointers(DiskUnit d, int indirect, int[] blocks, int b) {
+		VirtualDiskBlock vdb = new VirtualDiskBlock(d.getBlockSize());
+		for (int i=0; i < d.getBlockSize() / 4 && b < blocks.length; i++)
+			DiskUtils.copyIntToBlock(vdb, 4*i, blocks[b++]);
+		d.write(indirect, vdb);
+		return b;
+	}
+	
+	private static int getIntInBlock(DiskUnit d, int blockNum, int index) {
+		return DiskUtils.getIntFromBlock(DiskUtils.copyBlockToVDB(d, blockNum), 4*index);
+	}
+	
+	private static void setIntInBlock(DiskUnit d, int blockNum, int index, int value) {
+		VirtualDiskBlock vdb = DiskUtils.copyBlockToVDB(d, blockNum);
+		DiskUtils.copyIntToBlock(vdb, 4*index, value);
+		d.write(blockNum, vdb);
+	}
+	
+	/**
+	 * Gets the type of an i-node, kept in its last byte.
+	 * @param d DiskUnit in use
+	 * @param iNodeIndex Index of the i-node.
+	 * @return FILE, CHAINED_DIRECTORY, HASHED_DIRECTORY or BTREE_DIRECTORY.
+	 */
+	public static int getTypeOfiNode(DiskUnit d, int iNodeIndex) {
+		return d.getINodeTable().getType(iNodeIndex);
+	}
+	
+	/**
+	 * Sets the type of an i-node, kept in its last byte.
+	 * @param d DiskUnit in use
+	 * @param iNodeIndex Index of the i-node.
+	 * @param type FILE, CHAINED_DIRECTORY, HASHED_DIRECTORY or BTREE_DIRECTORY.
+	 */
+	public static void setTypeOfiNode(DiskUnit d, int iNodeIndex, int type) {
+		d.getINodeTable().setType(iNodeIndex, type);
+	}
+	
+	/**
+	 * Gets the Directory that stores the entries of a directory, given by the type of its i-node.
+	 * @param d DiskUnit in use
+	 * @param iNodeIndex Index of the i-node of the directory.
+	 * @return The Directory of the disk for that kind of directory.
+	 */
+	public static Directory getDirectory(DiskUnit d, int iNodeIndex) {
+		return d.getDirectory(getTypeOfiNode(d, iNodeIndex));
+	}
+	
+	/**
+	 * Frees an i-node, clearing its fields and marking it free in the i-node bitmap.
+	 * @param d DiskUnit in use
+	 * @param iNodeIndex Index of the i-node freed.
+	 */
+	public static void freeiNode(DiskUnit d, int iNodeIndex) {
+		setSizeOfiNode(d, iNodeIndex, 0);
+		setTypeOfiNode(d, iNodeIndex, FILE);
+		setDataBlockToINode(d, iNodeIndex, 0);
+		d.getINodeBitmap().free(iNodeIndex);
+	}
+	
+	/**
+	 * Gets a free i-node from the i-node bitmap, without reading any disk block.
+	 * @param d DiskUnit in use
+	 * @return Index of the i-node taken
+	 * @throws FullDiskException If every i-node is in use.
+	 */
+	public static int getFreeiNode(DiskUnit d) throws FullDiskException {
+		int freeiNodePos = d.getINodeBitmap().allocate();
+		if (freeiNodePos < 0)
+			throw new FullDiskException("No more I-Nodes available");
+		return freeiNodePos;
+	}
+	
+	/**
+	 * Marks as in use, in an i-node bitmap that is not stored in the disk, i-node 0
+	 * and the i-nodes of the files of the root directory. Every other i-node is free,
+	 * including those lost by the list of free i-nodes of the original format.
+	 * @param d DiskUnit in use
+	 */
+	public static void rebuildINodeBitmap(DiskUnit d) {
+		INodeBitmap bitmap = d.getINodeBitmap();
+		bitmap.setInUse(0);   // the root directory
+		int rootBlockNum = getFirstDataBlockFromiNode(d, 0);
+		if (rootBlockNum <= 1)   // a new disk, whose i-node 0 still links to free i-node 1: no root directory yet
+			return;
+		for (int dirBlockNum : getDirectory(d, 0).getEntryBlocks(d, rootBlockNum)) {
+			VirtualDiskBlock vdb = DiskUtils.copyBlockToVDB(d, dirBlockNum);
+			for (int i=1; i <= (d.getBlockSize() - 4) / 24; i++) {
+				int iNodeRef = DiskUtils.getIntFromBlock(vdb, (i*24)-4); // i-node index after the file name
+				if (iNodeRef == 0)
+					break;
+				if (iNodeRef < d.getiNodeNum())   // an entry with no valid i-node does not stop the mount
+					bitmap.setInUse(iNodeRef);
+			}
+		}
+	}
+	
+	
+	
+	
+	
+}
@@ -0,0 +1,129 @@
+package testers;
+import java.io.File;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Random;
+
+import diskUtilities.*;
+
+public class BTreeDirectoryTester {
+
+	private static final String DISK = "btreeTester";
+	private static final int NUM_OF_FILES = 400;
+	private static int failures = 0;
+
+	/**
+	 * Loads a few hundred files, in shuffled order, into the root directory of a
+	 * disk with B+-tree directories and 256-byte blocks, so that the tree gets two
+	 * levels of internal nodes. Some of them are removed, and the leaves read in
+	 * order, the files found by prefix and the lookups of every name are checked.
+	 * @param args Systems argument
+	 */
+	public static void main(String[] args) throws IOException {
+		DiskManager.setDiskFormat("btree");
+		DiskManager.deleteDiskUnit(DISK);
+		DiskManager.createDiskUnit(DISK, 4096, 256);
+		DiskManager.mountDisk(DISK);
+
+		ArrayList<String> names = new ArrayList<>();
+		for (int i=0; i < NUM_OF_FILES; i++)
+			names.add("file"+i);
+		Collections.shuffle(names, new Random(18));
+
+		File extFile = File.createTempFile("btree", ".txt");
+		extFile.deleteOnExit();
+		for (String name : names) {
+			FileWriter out = new FileWriter(extFile);
+			out.write(name);   // the content of each file is its name
+			out.close();
+			DiskManager.loadFile(extFile.getPath(), name);
+		}
+
+		DiskUnit d = DiskManager.currentMountedDisk;
+		int root = iNodesManager.getFirstDataBlockFromiNode(d, 0);
+		int levels = DiskUtils.getIntFromBlock(DiskUtils.copyBlockToVDB(d, root), 4);
+		check(levels >= 2, "levels of internal nodes: "+levels);
+
+		ArrayList<String> removed = new ArrayList<>();
+		for (int i=0; i < NUM_OF_FILES; i += 25) {
+			DiskManager.removeFile("file"+i);
+			names.remove("file"+i);
+			removed.add("file"+i);
+		}
+		Collections.sort(names);
+		checkDirectory(names, removed);
+
+		DiskManager.unmountDisk();
+		DiskManager.mountDisk(DISK);
+		checkDirectory(names, removed);
+
+		DiskManager.unmountDisk();
+		DiskManager.deleteDiskUnit(DISK);
+		System.out.println(failures == 0 ? "All checks passed." : failures+" checks failed.");
+	}
+
+	/**
+	 * Checks the root directory of the mounted disk against the names it should have.
+	 * @param names Names of the files in the directory, sorted.
+	 * @param removed Names of the files removed from it.
+	 */
+	private static void checkDirectory(ArrayList<String> names, ArrayList<String> removed) {
+		DiskUnit d = DiskManager.currentMountedDisk;
+		Directory dir = iNodesManager.getDirectory(d, 0);
+		int root = iNodesManager.getFirstDataBlockFromiNode(d, 0);
+
+		// The leaves, read in order, hold every name sorted
+		ArrayList<String> scanned = new ArrayList<>();
+		for (int leaf : dir.getEntryBlocks(d, root)) {
+			VirtualDiskBlock vdb = DiskUtils.copyBlockToVDB(d, leaf);
+			for (int bytePos=0; bytePos + 24 <= d.getBlockSize() - 4; bytePos += 24) {
+				if (DiskUtils.getIntFromBlock(vdb, bytePos+20) == 0)
+					break;
+				scanned.add(getName(vdb, bytePos).trim());
+			}
+		}
+		check(scanned.equals(names), "sorted scan of "+scanned.size()+" names");
+
+		// The files found by prefix are those whose name starts with it, in order
+		ArrayList<String> expected = new ArrayList<>();
+		for (String name : names)
+			if (name.startsWith("file1"))
+				expected.add(name);
+		ArrayList<Integer> iNodes = new ArrayList<>();
+		ArrayList<String> found = dir.findByPrefix(d, root, "file1", iNodes);
+		ArrayList<String> foundNames = new ArrayList<>();
+		for (String name : found)
+			foundNames.add(name.trim());
+		check(foundNames.equals(expected), "prefix file1: "+found.size()+" names");
+		boolean sameINodes = iNodes.size() == found.size();
+		for (int i=0; sameINodes && i < found.size(); i++)
+			sameINodes = iNodes.get(i) == FileLoaderAndManager.findINodeOfFile(d, found.get(i), 0);
+		check(sameINodes, "prefix file1: i-nodes of the names");
+
+		// Every name is found, with the size of its content, and no removed one is
+		boolean lookups = true;
+		for (String name : names) {
+			int iNode = FileLoaderAndManager.findINodeOfFile(d, DiskUtils.formatFileName(name), 0);
+			lookups &= iNode != -1 && iNodesManager.getSizeiNode(d, iNode) == name.length();
+		}
+		for (String name : removed)
+			lookups &= FileLoaderAndManager.findINodeOfFile(d, DiskUtils.formatFileName(name), 0) == -1;
+		check(lookups, "lookups of "+names.size()+" names and "+removed.size()+" removed ones");
+	}
+
+	private static String getName(VirtualDiskBlock vdb, int bytePos) {
+		char[] name = new char[20];
+		for (int j=0; j<20; j++)
+			name[j] = DiskUtils.getCharFromBlock(vdb, bytePos+j);
+		return new String(name);
+	}
+
+	private static void check(boolean passed, String what) {
+		System.out.println((passed ? "OK      " : "FAILED  ")+what);
+		if (!passed)
+			failures++;
+	}
+
+}
@@ -0,0 +1,247 @@
+package testers;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.Random;
+
+import diskExceptions.FullDiskException;
+import diskUtilities.*;
+
+public class FileHandleTester {
+
+	private static final String DISK = "handleTester";
+	private static int failures = 0;
+
+	/**
+	 * Reads and writes a file through a FileHandle at positions and lengths that
+	 * are not aligned to the blocks, so that most transfers start and end in the
+	 * middle of a block and go across several of them, on a disk of each file
+	 * layout. The content read is checked against a copy of the file kept in memory,
+	 * also after writing past the end of the file and after remounting the disk.
+	 * Writing into a reflinked copy must not change the original, and an append
+	 * that does not fit in the disk must leave the file and the free blocks as they were.
+	 * @param args Systems argument
+	 */
+	public static void main(String[] args) throws IOException {
+		String[] layouts = {"chained", "extents", "indexed"};
+		for (String layout : layouts) {
+			DiskManager.setDiskFormat(layout);
+			DiskManager.deleteDiskUnit(DISK);
+			DiskManager.createDiskUnit(DISK, 1024, 64);
+			DiskManager.mountDisk(DISK);
+			testLayout(layout);
+			testReflink(layout);
+			testAppendOnFullDisk(layout);
+			DiskManager.unmountDisk();
+			DiskManager.deleteDiskUnit(DISK);
+		}
+		System.out.println(failures == 0 ? "All checks passed." : failures+" checks failed.");
+	}
+
+	private static void testLayout(String layout) throws IOException {
+		Random random = new Random(12);
+		byte[] content = new byte[1000];
+		random.nextBytes(content);
+		File extFile = File.createTempFile("handle", ".bin");
+		extFile.deleteOnExit();
+		FileOutputStream out = new FileOutputStream(extFile);
+		out.write(content);
+		out.close();
+		DiskManager.loadFile(extFile.getPath(), "data");
+
+		// Unaligned writes inside the file, each going across block boundaries
+		FileHandle handle = FileHandle.open("data");
+		for (int i=0; i < 50; i++) {
+			int pos = random.nextInt(content.length - 150);
+			byte[] bytes = new byte[1 + random.nextInt(150)];
+			random.nextBytes(bytes);
+			handle.write(pos, bytes, 0, bytes.length);
+			System.arraycopy(bytes, 0, content, pos, bytes.length);
+		}
+		check(readsMatch(handle, content, random), layout+": unaligned writes inside the file");
+
+		// A write past the end leaves a gap of zeros before the bytes written
+		byte[] tail = new byte[77];
+		random.nextBytes(tail);
+		handle.write(content.length + 33, tail, 0, tail.length);
+		content = Arrays.copyOf(content, content.length + 33 + tail.length);
+		System.arraycopy(tail, 0, content, content.length - tail.length, tail.length);
+		check(handle.size() == content.length, layout+": size after writing past the end");
+		check(readsMatch(handle, content, random), layout+": reads after writing past the end");
+
+		// A read from near the end stops at the end of the file
+		byte[] last = new byte[100];
+		int n = handle.read(content.length - 10, last, 0, last.length);
+		check(n == 10 && Arrays.equals(Arrays.copyOf(last, n), Arrays.copyOfRange(content, content.length - 10, content.length)),
+				layout+": read stopped at the end of the file");
+		check(handle.read(content.length, last, 0, last.length) == -1, layout+": read at the end of the file");
+		handle.close();
+
+		DiskManager.unmountDisk();
+		DiskManager.mountDisk(DISK);
+		handle = FileHandle.open("data");
+		check(readsMatch(handle, content, random), layout+": reads after remounting the disk");
+		handle.close();
+	}
+
+	/**
+	 * Writes into the middle of a reflinked copy of a file and appends to it. Only
+	 * the blocks written are copied (for a chained file, the shared blocks before them
+	 * too), and the original file keeps its content, also after remounting the disk.
+	 */
+	private static void testReflink(String layout) throws IOException {
+		Random random = new Random(56);
+		int payload = DiskManager.currentMountedDisk.getFileLayout().getPayloadSize();
+		byte[] content = new byte[40*payload - 30];   // room left in the last block
+		random.nextBytes(content);
+		File extFile = File.createTempFile("handle", ".bin");
+		extFile.deleteOnExit();
+		FileOutputStream out = new FileOutputStream(extFile);
+		out.write(content);
+		out.close();
+		DiskManager.loadFile(extFile.getPath(), "orig");
+		DiskManager.reflinkFile("orig", "link");
+		byte[] copy = content.clone();
+
+		FreeSpaceBitmap bitmap = DiskManager.currentMountedDisk.getFreeSpaceBitmap();
+		int freeBlocks = bitmap.getFreeBlocks();
+		FileHandle link = FileHandle.open("link");
+		byte[] bytes = new byte[10];
+		random.nextBytes(bytes);
+		link.write(20*payload + 5, bytes, 0, bytes.length);
+		System.arraycopy(bytes, 0, copy, 20*payload + 5, bytes.length);
+		if (!layout.equals("chained"))
+			check(bitmap.getFreeBlocks() == freeBlocks - 1, layout+": only the block written is copied");
+		freeBlocks = bitmap.getFreeBlocks();
+		link.append(bytes, 0, bytes.length);
+		copy = Arrays.copyOf(copy, copy.length + bytes.length);
+		System.arraycopy(bytes, 0, copy, copy.length - bytes.length, bytes.length);
+		if (!layout.equals("chained"))
+			check(bitmap.getFreeBlocks() == freeBlocks - 1, layout+": only the last block is copied by an append");
+
+		FileHandle orig = FileHandle.open("orig");
+		check(readsMatch(link, copy, random) && readsMatch(orig, content, random), layout+": reads after writing into a reflinked file");
+		link.close();
+		orig.close();
+
+		DiskManager.unmountDisk();
+		DiskManager.mountDisk(DISK);
+		link = FileHandle.open("link");
+		orig = FileHandle.open("orig");
+		check(readsMatch(link, copy, random) && readsMatch(orig, content, random), layout+": reads of a reflinked file after remounting");
+		link.close();
+		orig.close();
+	}
+
+	/**
+	 * Fragments a file by appending to it in turns with two others, fills the disk
+	 * and removes one of the others, so that the free blocks are scattered. An append
+	 * that takes every free block but one for data then has no space for its block
+	 * map (the extents of the blocks do not fit in one extent block), and must give
+	 * back everything it took. So must a write of the same bytes past the end of the file.
+	 */
+	private static void testAppendOnFullDisk(String layout) throws IOException {
+		Random random = new Random(34);
+		int blockSize = DiskManager.currentMountedDisk.getBlockSize();
+		byte[] block = new byte[blockSize];
+		File extFile = File.createTempFile("handle", ".bin");
+		extFile.deleteOnExit();
+		FileOutputStream out = new FileOutputStream(extFile);
+		out.write(block);
+		out.close();
+		DiskManager.loadFile(extFile.getPath(), "frag");
+		DiskManager.loadFile(extFile.getPath(), "spare");
+		DiskManager.loadFile(extFile.getPath(), "fill");
+
+		FileHandle frag = FileHandle.open("frag");
+		FileHandle spare = FileHandle.open("spare");
+		FileHandle fill = FileHandle.open("fill");
+		byte[] content = new byte[blockSize];
+		for (int i=0; i < 40; i++) {
+			random.nextBytes(block);
+			frag.append(block, 0, block.length);
+			content = Arrays.copyOf(content, content.length + blockSize);
+			System.arraycopy(block, 0, content, content.length - blockSize, blockSize);
+			spare.append(block, 0, block.length);
+			fill.append(block, 0, block.length);
+		}
+		spare.close();
+		for (int chunk = 64*blockSize; chunk >= blockSize; chunk /= 2) {
+			byte[] bytes = new byte[chunk];
+			try {
+				while (true)
+					fill.append(bytes, 0, bytes.length);
+			} catch (FullDiskException e) {
+				// try a smaller chunk
+			}
+		}
+		fill.close();
+		DiskManager.removeFile("spare");
+
+		FreeSpaceBitmap bitmap = DiskManager.currentMountedDisk.getFreeSpaceBitmap();
+		int freeBlocks = bitmap.getFreeBlocks();
+		byte[] bytes = new byte[(freeBlocks - 1) * blockSize];
+		boolean full = false;
+		try {
+			frag.append(bytes, 0, bytes.length);
+		} catch (FullDiskException e) {
+			full = true;
+		}
+		if (layout.equals("extents"))
+			check(full, layout+": append with no space for the block map");
+		if (full) {
+			check(bitmap.getFreeBlocks() == freeBlocks, layout+": free blocks after an append on a full disk");
+			check(frag.size() == content.length, layout+": size after an append on a full disk");
+			full = false;
+			try {
+				frag.write(frag.size(), bytes, 0, bytes.length);
+			} catch (FullDiskException e) {
+				full = true;
+			}
+			check(full && bitmap.getFreeBlocks() == freeBlocks, layout+": free blocks after writing past the end of a full disk");
+			check(frag.size() == content.length, layout+": size after writing past the end of a full disk");
+		}
+
+		bytes = new byte[4*blockSize];
+		random.nextBytes(bytes);
+		frag.append(bytes, 0, bytes.length);
+		content = Arrays.copyOf(content, content.length + bytes.length);
+		System.arraycopy(bytes, 0, content, content.length - bytes.length, bytes.length);
+		check(readsMatch(frag, content, random), layout+": reads after an append on a full disk");
+		frag.close();
+
+		DiskManager.unmountDisk();
+		DiskManager.mountDisk(DISK);
+		frag = FileHandle.open("frag");
+		check(readsMatch(frag, content, random), layout+": reads after an append on a full disk and remounting");
+		frag.close();
+	}
+
+	/**
+	 * Reads the whole file, and pieces of it at random positions and lengths, and
+	 * compares them with the expected content.
+	 */
+	private static boolean readsMatch(FileHandle handle, byte[] content, Random random) {
+		byte[] whole = new byte[content.length];
+		if (handle.read(0, whole, 0, whole.length) != whole.length || !Arrays.equals(whole, content))
+			return false;
+		for (int i=0; i < 50; i++) {
+			int pos = random.nextInt(content.length - 1);
+			int len = 1 + random.nextInt(Math.min(200, content.length - pos));
+			byte[] piece = new byte[len + 6];
+			if (handle.read(pos, piece, 3, len) != len)   // into the middle of the array
+				return false;
+			if (!Arrays.equals(Arrays.copyOfRange(piece, 3, 3 + len), Arrays.copyOfRange(content, pos, pos + len)))
+				return false;
+		}
+		return true;
+	}
+
+	private static void check(boolean passed, String what) {
+		System.out.println((passed ? "OK      " : "FAILED  ")+what);
+		if (!passed)
+			failures++;
+	}
+
+}
@@ -19,6 +19,7 @@ import systemGeneralClasses.VariableLengthCommand;
 import stack.IntStack;
 
 import diskUtilities.DiskManager;
+import diskUtilities.DiskUnit;
 import diskUtilities.DiskUtils;
 
 
@@ -69,9 +70,15 @@ public class SystemCommandsProcessor extends CommandProcessor {
 		add(GENERALSTATE, SystemCommand.getFLSC("createdisk name int int", new CreateDiskProcessor())); 		
 		add(GENERALSTATE, SystemCommand.getFLSC("deletedisk name", new DeleteDiskProcessor()));
 		add(GENERALSTATE, SystemCommand.getFLSC("mount name", new MountProcessor()));
+		add(GENERALSTATE, SystemCommand.getFLSC("mountmapped name", new MountMappedProcessor()));
+		add(GENERALSTATE, SystemCommand.getFLSC("mountram name", new MountRAMProcessor()));
+		add(GENERALSTATE, SystemCommand.getFLSC("sync", new SyncProcessor()));
+		add(GENERALSTATE, SystemCommand.getFLSC("cachestats", new CacheStatsProcessor()));
+		add(GENERALSTATE, SystemCommand.getFLSC("diskformat name", new DiskFormatProcessor()));
 		add(GENERALSTATE, SystemCommand.getFLSC("unmount", new UnmountProcessor()));
 		add(GENERALSTATE, SystemCommand.getFLSC("loadfile name name", new LoadProcessor()));
 		add(GENERALSTATE, SystemCommand.getFLSC("cp name name", new CopyProcessor()));
+		add(GENERALSTATE, SystemCommand.getFLSC("reflink name name", new ReflinkProcessor()));
 		add(GENERALSTATE, SystemCommand.getFLSC("ls", new ListProcessor()));
 		add(GENERALSTATE, SystemCommand.getFLSC("cat name", new CatProcessor()));
 		add(GENERALSTATE, SystemCommand.getFLSC("showdisks", new ShowDisksProcessor())); 
@@ -79,9 +86,9 @@ public class SystemCommandsProcessor extends CommandProcessor {
 		add(GENERALSTATE, SystemCommand.getFLSC("mkdir dir_name", new mkdir())); 
 		add(GENERALSTATE, SystemCommand.getFLSC("rmdir dir_name", new rmdir())); 
 		add(GENERALSTATE, SystemCommand.getFLSC("drmdir dir_name", new drmdir()));
-		add(GENERALSTATE, SystemCommand.getFLSC("rm file_name", new rm()));
+		add(GENERALSTATE, SystemCommand.getFLSC("rm name", new rm()));
 		add(GENERALSTATE, SystemCommand.getFLSC("find name", new find()));
-		add(GENERALSTATE, SystemCommand.getFLSC("append ext_file_name  file_name", new append()));
+		add(GENERALSTATE, SystemCommand.getFLSC("append name name", new append()));
 		add(GENERALSTATE, SystemCommand.getFLSC("exit", new ShutDownProcessor())); 
 		add(GENERALSTATE, SystemCommand.getFLSC("help", new HelpProcessor())); 
 				
@@ -184,6 +191,82 @@ public class SystemCommandsProcessor extends CommandProcessor {
 			return resultsList; 
 		}
 	}
+	/**
+	 * Processor that mounts a disk with its file memory-mapped and makes it the current working disk
+	 * @author Francisco Diaz
+	 *
+	 */
+	private class MountMappedProcessor implements CommandActionHandler { 
+		public ArrayList<String> execute(Command c) { 
+
+			resultsList = new ArrayList<String>();
+			FixedLengthCommand fc = (FixedLengthCommand) c;
+			String name = fc.getOperand(1);
+			DiskManager.mountDisk(name, DiskUnit.MAPPED_MOUNT);
+			
+			return resultsList; 
+		}
+	}
+	/**
+	 * Processor that loads a disk in memory and makes it the current working disk.
+	 * Changes are written back into the disk file on sync or unmount.
+	 * @author Francisco Diaz
+	 *
+	 */
+	private class MountRAMProcessor implements CommandActionHandler { 
+		public ArrayList<String> execute(Command c) { 
+
+			resultsList = new ArrayList<String>();
+			FixedLengthCommand fc = (FixedLengthCommand) c;
+			String name = fc.getOperand(1);
+			DiskManager.mountDisk(name, DiskUnit.RAM_MOUNT);
+			
+			return resultsList; 
+		}
+	}
+	/**
+	 * Writes back all changes made to the current working disk
+	 * @author Francisco Diaz
+	 */
+	private class SyncProcessor implements CommandActionHandler { 
+		public ArrayList<String> execute(Command c) { 
+
+			resultsList = new ArrayList<String>(); 
+			DiskManager.syncDisk();
+			return resultsList; 
+		}
+	}
+	/**
+	 * Selects the format of the disk units created from now on, one option at a time:
+	 * "bitmap" or "tree" for the structure that keeps their free blocks; "extents",
+	 * "indexed" or "chained" for the layout of their data files; "hashed", "btree" or
+	 * "linear" for their directories; "inodes32" or "inodes9" for the size of their 
+	 * i-nodes; "inodebitmap" or "inodelist" for how the free i-nodes are found.
+	 * The first option of each pair or trio is the default.
+	 * @author Francisco Diaz
+	 *
+	 */
+	private class DiskFormatProcessor implements CommandActionHandler { 
+		public ArrayList<String> execute(Command c) { 
+
+			resultsList = new ArrayList<String>(); 
+			FixedLengthCommand fc = (FixedLengthCommand) c;
+			DiskManager.setDiskFormat(fc.getOperand(1));
+			return resultsList; 
+		}
+	}
+	/**
+	 * Shows the hits and misses of the block cache of the current working disk
+	 * @author Francisco Diaz
+	 */
+	private class CacheStatsProcessor implements CommandActionHandler { 
+		public ArrayList<String> execute(Command c) { 
+
+			resultsList = new ArrayList<String>(); 
+			DiskManager.showCacheStats();
+			return resultsList; 
+		}
+	}
 	/**
 	 * Unmount's the current working disk
 	 * @author Francisco Diaz
@@ -230,6 +313,22 @@ public class SystemCommandsProcessor extends CommandProcessor {
 			return resultsList; 
 		}
 	}
+	/**
+	 * Copies one file to another sharing its data blocks
+	 * @author Francisco Diaz
+	 *
+	 */
+	private class ReflinkProcessor implements CommandActionHandler { 
+		public ArrayList<String> execute(Command c) { 
+
+			resultsList = new ArrayList<String>();
+			FixedLengthCommand fc = (FixedLengthCommand) c;
+			String inputFile = fc.getOperand(1);
+			String file = fc.getOperand(2);
+			DiskManager.reflinkFile(inputFile, file);
+			return resultsList; 
+		}
+	}
 	/**
 	 * Lists all the directories inside the current directory
 	 * @author Francisco Diaz
@@ -302,30 +401,51 @@ public class SystemCommandsProcessor extends CommandProcessor {
 		
 	}
 	
+	/**
+	 * Removes a file from the current directory, freeing its blocks and its i-node
+	 * @author Francisco Diaz
+	 *
+	 */
 	private class rm implements CommandActionHandler{
 
 		@Override
 		public ArrayList<String> execute(Command c) {
-			// TODO Auto-generated method stub
-			return null;
+			resultsList = new ArrayList<String>(); 
+			FixedLengthCommand fc = (FixedLengthCommand) c;
+			DiskManager.removeFile(fc.getOperand(1));
+			return resultsList;
 		}
 		
 	}
+	/**
+	 * Lists the files of the current directory whose names begin with a prefix
+	 * @author Francisco Diaz
+	 *
+	 */
 	private class find implements CommandActionHandler{
 
 		@Override
 		public ArrayList<String> execute(Command c) {
-			// TODO Auto-generated method stub
-			return null;
+			resultsList = new ArrayList<String>(); 
+			FixedLengthCommand fc = (FixedLengthCommand) c;
+			DiskManager.findFiles(fc.getOperand(1));
+			return resultsList;
 		}
 		
 	}
+	/**
+	 * Appends the content of an external file to a file of the current directory
+	 * @author Francisco Diaz
+	 *
+	 */
 	private class append implements CommandActionHandler{
 
 		@Override
 		public ArrayList<String> execute(Command c) {
-			return null;
-			
+			resultsList = new ArrayList<String>(); 
+			FixedLengthCommand fc = (FixedLengthCommand) c;
+			DiskManager.appendFile(fc.getOperand(1), fc.getOperand(2));
+			return resultsList;
 		}
 		
 	}
@@ -341,6 +461,8 @@ public class SystemCommandsProcessor extends CommandProcessor {
 		public ArrayList<String> execute(Command c) { 
 
 			resultsList = new ArrayList<String>(); 
+			if (DiskManager.isDiskMounted())   // Write back the control data of the mounted disk
+				DiskManager.unmountDisk();
 			resultsList.add("SYSTEM IS SHUTTING DOWN!!!!");
 			stopExecution = true;
 			return resultsList; 